@@ -1,5 +1,12 @@
 package ru.redisMessenger.application;
 
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.service.MessageRetentionJob;
+import ru.redisMessenger.application.service.RedisMessengerService;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.MessageOutbox;
+import ru.redisMessenger.application.util.Metrics;
+import ru.redisMessenger.application.util.SubscriptionManager;
 
 /**
  * main class
@@ -11,8 +18,22 @@ public class Application {
      * @param arr {@link String[]} arguments
      */
     public static void main(String[] arr){
+        RedisMessengerService service = new RedisMessengerService();
+        try {
+            service.startOutbox();
+        } catch (RedisMessengerException e) {
+            System.out.println(e.getMessage());
+        }
+        MessageRetentionJob retentionJob = new MessageRetentionJob(service);
+        retentionJob.start();
         UserActionHandler actionHandler = new UserActionHandler();
         actionHandler.startConsole();
+        retentionJob.close();
+        service.close();
+        MessageOutbox.closeInstance();
+        SubscriptionManager.closeInstance();
+        JedisClient.closeInstance();
+        Metrics.closeInstance();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,314 @@
+package ru.redisMessenger.application;
+
+import lombok.extern.log4j.Log4j2;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.service.RedisMessengerService;
+import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.LatencyHistogram;
+import ru.redisMessenger.application.util.MessageOutbox;
+import ru.redisMessenger.application.util.Metrics;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.User;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * load generator, it reproduces load of many users against redis of config.properties
+ * load.users users are created, then load.senders threads execute load.rate operations per second in total
+ * during load.duration.seconds: sending of messages, reading of history pages and subscriptions to chats in proportions of load.mix.*
+ * every sender executes operations by fixed schedule and latency is measured from the scheduled start of operation,
+ * so a slow operation also counts the delay of operations which waited for it (coordinated omission),
+ * service time is measured from the real start of operation
+ * properties are overridden by system properties, e.g. java -Dload.rate=5000 -cp redis-messenger-application.jar ru.redisMessenger.application.LoadGenerator
+ */
+@Log4j2
+public class LoadGenerator {
+
+    private static final String USER_NAME_PREFIX = "loadUser";
+    private static final int SENDER_SUBSCRIPTIONS = 10;
+
+    private final RedisMessengerService service;
+    private final int usersCount;
+    private final int senders;
+    private final int rate;
+    private final long durationNanos;
+    private final int pageSize;
+    private final Map<Operation, Integer> mix;
+    private final int mixTotal;
+    private final Map<Operation, LatencyHistogram> responseTimes = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> serviceTimes = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final LongAdder receivedMessages = new LongAdder();
+    private List<User> users;
+
+    /**
+     * entry point
+     * @param arr {@link String[]} arguments
+     */
+    public static void main(String[] arr){
+        RedisMessengerService service = new RedisMessengerService();
+        try {
+            System.out.println(new LoadGenerator(service).run());
+        } finally {
+            service.close();
+            MessageOutbox.closeInstance();
+            SubscriptionManager.closeInstance();
+            JedisClient.closeInstance();
+            Metrics.closeInstance();
+        }
+    }
+
+    /**
+     * constructor with parameters of config.properties
+     * @param service {@link RedisMessengerService} executes operations
+     */
+    public LoadGenerator(RedisMessengerService service) {
+        this(service, property(Configuration.Property.LOAD_USERS), property(Configuration.Property.LOAD_SENDERS),
+                property(Configuration.Property.LOAD_RATE), property(Configuration.Property.LOAD_DURATION_SECONDS),
+                mix(property(Configuration.Property.LOAD_MIX_SEND), property(Configuration.Property.LOAD_MIX_READ),
+                        property(Configuration.Property.LOAD_MIX_SUBSCRIBE)));
+    }
+
+    /**
+     * constructor
+     * @param service {@link RedisMessengerService} executes operations
+     * @param usersCount int count of created users
+     * @param senders int count of sender threads
+     * @param rate int target count of operations per second of all senders
+     * @param durationSeconds int duration of load
+     * @param mix {@link Map} weights of operations
+     */
+    LoadGenerator(RedisMessengerService service, int usersCount, int senders, int rate, int durationSeconds, Map<Operation, Integer> mix) {
+        this.service = service;
+        this.usersCount = usersCount;
+        this.senders = senders;
+        this.rate = rate;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.pageSize = property(Configuration.Property.MESSAGES_PAGE_SIZE);
+        this.mix = mix;
+        this.mixTotal = mix.values().stream().mapToInt(Integer::intValue).sum();
+        for (Operation operation : Operation.values()) {
+            responseTimes.put(operation, new LatencyHistogram());
+            serviceTimes.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * create users, execute load and delete users with their messages
+     * @return {@link String} report
+     */
+    public String run() {
+        deleteUsers();
+        createUsers();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "load-sender-".concat(String.valueOf(threadNumber.getAndIncrement())));
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = TimeUnit.SECONDS.toNanos(senders) / rate;
+        long start = System.nanoTime();
+        log.info("load of {} operations per second by {} senders is started", rate, senders);
+        for (int i = 0; i < senders; i++) {
+            //senders are shifted, so operations are spread evenly over interval
+            long firstOperation = start + intervalNanos * i / senders;
+            executor.execute(() -> send(firstOperation, intervalNanos, start + durationNanos));
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String report = report(System.nanoTime() - start);
+        deleteUsers();
+        return report;
+    }
+
+    /**
+     * execute operations of one sender by schedule
+     * @param firstOperation long scheduled start of the first operation by {@link System#nanoTime()}
+     * @param intervalNanos long time between scheduled starts of operations
+     * @param end long end of load by {@link System#nanoTime()}
+     */
+    private void send(long firstOperation, long intervalNanos, long end) {
+        Deque<SubscriptionManager.Subscription> subscriptions = new ArrayDeque<>();
+        for (long scheduled = firstOperation; scheduled < end; scheduled += intervalNanos) {
+            long now = System.nanoTime();
+            if (now < scheduled)
+                LockSupport.parkNanos(scheduled - now);
+            Operation operation = nextOperation();
+            User userFrom = randomUser();
+            User userTo = randomUser();
+            long begin = System.nanoTime();
+            try {
+                execute(operation, userFrom, userTo, subscriptions);
+            } catch (RedisMessengerException | RuntimeException e) {
+                errors.get(operation).increment();
+                log.debug("operation {} failed:\n{}", operation, e.getLocalizedMessage());
+            }
+            long done = System.nanoTime();
+            responseTimes.get(operation).record(done - scheduled);
+            serviceTimes.get(operation).record(done - begin);
+        }
+        subscriptions.forEach(SubscriptionManager.Subscription::unsubscribe);
+    }
+
+    /**
+     * execute one operation
+     * @param operation {@link Operation}
+     * @param userFrom {@link User} author or reader
+     * @param userTo {@link User} contact
+     * @param subscriptions {@link Deque} subscriptions of sender, the oldest one is cancelled when sender has too many subscriptions
+     * @throws RedisMessengerException when operation fails
+     */
+    private void execute(Operation operation, User userFrom, User userTo, Deque<SubscriptionManager.Subscription> subscriptions) throws RedisMessengerException {
+        switch (operation) {
+            case SEND:
+                Message message = new Message();
+                message.setFrom(userFrom);
+                message.setTo(userTo);
+                message.setText("load message ".concat(String.valueOf(System.nanoTime())));
+                service.sendMessage(message);
+                break;
+            case READ:
+                service.getMessages(userFrom, userTo, null, pageSize);
+                break;
+            case SUBSCRIBE:
+                subscriptions.addLast(service.subscribe(userFrom, userTo, received -> receivedMessages.increment()));
+                if (subscriptions.size() > SENDER_SUBSCRIPTIONS)
+                    subscriptions.pollFirst().unsubscribe();
+                break;
+        }
+    }
+
+    /**
+     * @return {@link Operation} random operation by weights of mix
+     */
+    private Operation nextOperation() {
+        int random = ThreadLocalRandom.current().nextInt(mixTotal);
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+            random -= weight.getValue();
+            if (random < 0)
+                return weight.getKey();
+        }
+        return Operation.SEND;
+    }
+
+    private User randomUser() {
+        return users.get(ThreadLocalRandom.current().nextInt(users.size()));
+    }
+
+    /**
+     * create users of load
+     */
+    private void createUsers() {
+        List<User> createdUsers = new ArrayList<>();
+        for (int i = 0; i < usersCount; i++)
+            createdUsers.add(new AdvancedUser(USER_NAME_PREFIX.concat(String.valueOf(i))));
+        service.addUsers(createdUsers);
+        users = createdUsers;
+    }
+
+    /**
+     * delete users of load, their keys in set of users and their conversations
+     */
+    private void deleteUsers() {
+        String[] userKeys = service.getUsersKeys().stream()
+                .filter(userKey -> userKey.substring(userKey.lastIndexOf(':') + 1).startsWith(USER_NAME_PREFIX))
+                .toArray(String[]::new);
+        if (userKeys.length > 0)
+            JedisClient.getInstance().removeValues(Configuration.getInstance().getProperty(Configuration.Property.REDIS_KEY_USERS.getPropertyName()), userKeys);
+        JedisClient.getInstance().deleteValuesByPattern("user:*:".concat(USER_NAME_PREFIX).concat("*"));
+        JedisClient.getInstance().deleteValuesByPattern("messages:*".concat(USER_NAME_PREFIX).concat("*"));
+    }
+
+    /**
+     * @param elapsedNanos long real duration of load
+     * @return {@link String} throughput, errors and latencies of operations
+     */
+    String report(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        StringBuilder report = new StringBuilder(String.format("load: %d users, %d senders, target %d ops/sec, %.1f sec, %d messages received by subscribers%n",
+                usersCount, senders, rate, elapsedSeconds, receivedMessages.sum()));
+        report.append(String.format("%-10s %10s %8s %10s %10s %10s %10s %10s %12s%n",
+                "operation", "count", "errors", "ops/sec", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "service p99"));
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram responseTime = responseTimes.get(operation);
+            total += responseTime.getCount();
+            report.append(String.format("%-10s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f %12.3f%n",
+                    operation.name().toLowerCase(), responseTime.getCount(), errors.get(operation).sum(), responseTime.getCount() / elapsedSeconds,
+                    millis(responseTime.getValueAtPercentile(50)), millis(responseTime.getValueAtPercentile(99)),
+                    millis(responseTime.getValueAtPercentile(99.9)), millis(responseTime.getMax()),
+                    millis(serviceTimes.get(operation).getValueAtPercentile(99))));
+        }
+        report.append(String.format("%-10s %10d %8s %10.1f%n", "total", total, "", total / elapsedSeconds));
+        report.append("latencies are measured from scheduled start of operation, service time from real start");
+        return report.toString();
+    }
+
+    /**
+     * @param operation {@link Operation}
+     * @return {@link LatencyHistogram} latencies of operation from scheduled start
+     */
+    LatencyHistogram getResponseTimes(Operation operation) {
+        return responseTimes.get(operation);
+    }
+
+    /**
+     * @param operation {@link Operation}
+     * @return long count of failed operations
+     */
+    long getErrors(Operation operation) {
+        return errors.get(operation).sum();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static int property(Configuration.Property property) {
+        return Integer.parseInt(Configuration.getInstance().getProperty(property.getPropertyName()));
+    }
+
+    /**
+     * @param send int weight of sending
+     * @param read int weight of reading
+     * @param subscribe int weight of subscriptions
+     * @return {@link Map} weights of operations
+     */
+    static Map<Operation, Integer> mix(int send, int read, int subscribe) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        mix.put(Operation.SEND, send);
+        mix.put(Operation.READ, read);
+        mix.put(Operation.SUBSCRIBE, subscribe);
+        return mix;
+    }
+
+    /**
+     * operation of load
+     */
+    enum Operation {
+
+        SEND, READ, SUBSCRIBE
+
+    }
+
+}
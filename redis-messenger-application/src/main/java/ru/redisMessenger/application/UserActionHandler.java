@@ -2,14 +2,18 @@ package ru.redisMessenger.application;
 
 import lombok.extern.log4j.Log4j2;
 import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.service.MessagesPage;
 import ru.redisMessenger.application.service.RedisMessengerService;
 import ru.redisMessenger.application.util.Configuration;
 import ru.redisMessenger.application.util.FileUploader;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.application.util.UploadStatistics;
 import ru.redisMessenger.core.entities.*;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.HashSet;
 import java.util.Set;
@@ -25,6 +29,9 @@ class UserActionHandler {
 
     private final String REDIS_KEY_USER_PREFIX_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_KEY_USER_PREFIX.getPropertyName());
     private final String FILE_OUTPUT_DIRECTORY_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.FILE_OUTPUT_DIRECTORY.getPropertyName());
+    private final int FILE_UPLOAD_CHUNK_SIZE_PROPERTY = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.FILE_UPLOAD_CHUNK_SIZE.getPropertyName()));
+    private final boolean FILE_UPLOAD_GZIP_PROPERTY = Boolean.parseBoolean(Configuration.getInstance().getProperty(Configuration.Property.FILE_UPLOAD_GZIP.getPropertyName()));
+    private final int MESSAGES_PAGE_SIZE_PROPERTY = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.MESSAGES_PAGE_SIZE.getPropertyName()));
 
     private final int COMMAND_STATUS_SUCCESS = 1;
     private final int COMMAND_STATUS_WARNING = 2;
@@ -50,11 +57,14 @@ class UserActionHandler {
     private final String MESSAGE_ACTION_INPUT_FIELD_USER_CLASS = "enter classname -> ";
     private final String MESSAGE_ACTION_INPUT_FIELD_USER_NAME = "enter username -> ";
     private final String MESSAGE_ACTION_INPUT_FIELD_MESSAGE = "enter message -> ";
+    private final String MESSAGE_ACTION_INPUT_FIELD_MORE_MESSAGES = "show older messages? (y/n) -> ";
+    private final String MESSAGE_ACTION_YES = "y";
 
     final String MESSAGE_ACTION_GET_MESSAGES = "get messages";
     private final String MESSAGE_INFO_GET_MESSAGES =    "=============get messages===============";
     final String MESSAGE_ACTION_UPLOAD_MESSAGES = "upload messages";
     private final String MESSAGE_INFO_UPLOAD_MESSAGES = "============upload messages=============";
+    private final String MESSAGE_INFO_UPLOADED = "uploaded messages: ";
     final String MESSAGE_ACTION_SEND_MESSAGE = "send message";
     private final String MESSAGE_INFO_SEND_MESSAGES =   "=============send messages==============";
     final String MESSAGE_ACTION_ADD_USER = "add user";
@@ -65,10 +75,17 @@ class UserActionHandler {
     private final String MESSAGE_INFO_GET_USERS =       "===============get users================";
     final String MESSAGE_ACTION_START_CHAT = "start chat";
     private final String MESSAGE_INFO_START_CHAT =      "==============start chat================";
+    private final String MESSAGE_INFO_CHAT_HELP = "type a message and press enter to send it, type \"exit chat\" to leave the chat";
+    private final String MESSAGE_INFO_CHAT_READ_ONLY_HELP = "you can only read this chat, type \"exit chat\" to leave it";
+    private final DateTimeFormatter CHAT_TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    final String MESSAGE_ACTION_EXIT_CHAT = "exit chat";
     final String MESSAGE_ACTION_CHOICE_USER = "choice user";
     private final String MESSAGE_INFO_CHOICE_USER =     "==============choice user===============";
     final String MESSAGE_ACTION_RESET_USER = "reset user";
     private final String MESSAGE_INFO_RESET_USER =      "==============reset user================";
+    final String MESSAGE_ACTION_MIGRATE_CONVERSATIONS = "migrate conversations";
+    private final String MESSAGE_INFO_MIGRATE_CONVERSATIONS = "=========migrate conversations==========";
+    private final String MESSAGE_INFO_MIGRATED_CONVERSATIONS = "migrated conversations: ";
     final String MESSAGE_ACTION_CLOSE_CONSOLE = "close console";
 
     /**
@@ -143,6 +160,9 @@ class UserActionHandler {
                 case MESSAGE_ACTION_RESET_USER:
                     status = commandResetUser();
                     break;
+                case MESSAGE_ACTION_MIGRATE_CONVERSATIONS:
+                    status = commandMigrateConversations();
+                    break;
                 default:
                     System.out.println(MESSAGE_ERROR_COMMAND_NOT_FOUND);
                     status = COMMAND_STATUS_ERROR;
@@ -274,7 +294,7 @@ class UserActionHandler {
     }
 
     /**
-     * start chat
+     * start chat, incoming messages are printed as they arrive, typed lines are sent to contact
      * @return int status
      */
     private int commandStartChat() {
@@ -282,10 +302,48 @@ class UserActionHandler {
         User contact = fillContact();
         if (contact == null)
             return COMMAND_STATUS_ERROR;
-        service.subscribe(currentUser, contact);
+        System.out.println(currentUser.canWrite() ? MESSAGE_INFO_CHAT_HELP : MESSAGE_INFO_CHAT_READ_ONLY_HELP);
+        SubscriptionManager.Subscription subscription = service.subscribe(currentUser, contact,
+                message -> System.out.println(chatLine(message)));
+        try {
+            String text;
+            while ((text = System.console().readLine()) != null && !MESSAGE_ACTION_EXIT_CHAT.equals(text.toLowerCase().trim())) {
+                if (text.trim().isEmpty())
+                    continue;
+                if (!currentUser.canWrite()) {
+                    System.out.println(MESSAGE_INFO_CHAT_READ_ONLY_HELP);
+                    continue;
+                }
+                Message message = new Message();
+                message.setFrom(currentUser);
+                message.setTo(contact);
+                message.setText(text.trim());
+                try {
+                    service.sendMessage(message);
+                } catch (RedisMessengerException e) {
+                    System.out.println(e.getLocalizedMessage());
+                }
+            }
+        } finally {
+            subscription.unsubscribe();
+        }
+        System.out.println(MESSAGE_INFO_END);
         return COMMAND_STATUS_SUCCESS;
     }
 
+    /**
+     * line of chat
+     * @param message {@link Message} received message
+     * @return {@link String} time, author and text
+     */
+    String chatLine(Message message) {
+        String time = message.getDateCreate() == null
+                ? ""
+                : LocalDateTime.ofInstant(message.getDateCreate().toInstant(), ZoneId.systemDefault()).format(CHAT_TIME_FORMATTER);
+        String author = message.getFrom() == null ? "" : message.getFrom().getName();
+        return String.join(" ", "[".concat(time).concat("]"), author.concat(":"), message.getText());
+    }
+
     /**
      * get messages
      * @return int status
@@ -295,8 +353,20 @@ class UserActionHandler {
         User contact = fillContact();
         if (contact == null)
             return COMMAND_STATUS_ERROR;
-        Set<String> messages = service.getMessages(currentUser, contact);
-        messages.forEach(System.out::println);
+        String cursor = null;
+        do {
+            MessagesPage page;
+            try {
+                page = service.getMessages(currentUser, contact, cursor, MESSAGES_PAGE_SIZE_PROPERTY);
+            } catch (RedisMessengerException e) {
+                System.out.println(e.getLocalizedMessage());
+                System.out.println(MESSAGE_INFO_END);
+                return COMMAND_STATUS_ERROR;
+            }
+            page.getMessages().forEach(System.out::println);
+            cursor = page.getNextCursor();
+        } while (cursor != null
+                && MESSAGE_ACTION_YES.equals(System.console().readLine(MESSAGE_ACTION_INPUT_FIELD_MORE_MESSAGES).toLowerCase().trim()));
         System.out.println(MESSAGE_INFO_END);
         return COMMAND_STATUS_SUCCESS;
     }
@@ -310,12 +380,16 @@ class UserActionHandler {
         User contact = fillContact();
         if (contact == null)
             return COMMAND_STATUS_ERROR;
-        Set<String> messages = service.getMessages(currentUser, contact);
+        String fileName = uploadedFileName(currentUser.getName(), contact.getName());
         try {
-            new FileUploader().writeLines(uploadedFileName(currentUser.getName(), contact.getName()), messages);
-            log.debug(uploadedFileName(currentUser.getName(), contact.getName()));
+            UploadStatistics statistics = new FileUploader().writeLines(fileName,
+                    service.iterateMessages(currentUser, contact, FILE_UPLOAD_CHUNK_SIZE_PROPERTY), FILE_UPLOAD_GZIP_PROPERTY);
+            log.debug(fileName);
+            System.out.println(MESSAGE_INFO_UPLOADED.concat(String.valueOf(statistics.getLines()))
+                    .concat(", bytes: ").concat(String.valueOf(statistics.getBytes()))
+                    .concat(", bytes/sec: ").concat(String.valueOf(statistics.getBytesPerSecond())));
             System.out.println(MESSAGE_INFO_END);
-        } catch (IOException | InvalidPathException e) {
+        } catch (IOException | InvalidPathException | RedisMessengerException e) {
             System.out.println(e.getLocalizedMessage());
             System.out.println(MESSAGE_INFO_END);
             return COMMAND_STATUS_ERROR;
@@ -359,6 +433,18 @@ class UserActionHandler {
         return COMMAND_STATUS_SUCCESS;
     }
 
+    /**
+     * move conversations to canonical keys
+     * @return int status
+     */
+    private int commandMigrateConversations(){
+        System.out.println(MESSAGE_INFO_MIGRATE_CONVERSATIONS);
+        long countMigratedConversations = service.migrateConversations();
+        System.out.println(MESSAGE_INFO_MIGRATED_CONVERSATIONS.concat(String.valueOf(countMigratedConversations)));
+        System.out.println(MESSAGE_INFO_END);
+        return COMMAND_STATUS_SUCCESS;
+    }
+
     /**
      * create name for uploaded file
      * @return {@link String} filename
@@ -367,7 +453,7 @@ class UserActionHandler {
         LocalDateTime date = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddhhmmssSSS");
         String dateStr = date.format(formatter);
-        return FILE_OUTPUT_DIRECTORY_PROPERTY.concat(String.join("_", currentUserName, contactName, dateStr).concat(".txt"));
+        return FILE_OUTPUT_DIRECTORY_PROPERTY.concat(String.join("_", currentUserName, contactName, dateStr).concat(FILE_UPLOAD_GZIP_PROPERTY ? ".txt.gz" : ".txt"));
     }
 
     /**
@@ -442,6 +528,7 @@ class UserActionHandler {
             }
             if (user.canDeleteUser()) {
                 commands.add(MESSAGE_ACTION_DELETE_USER);
+                commands.add(MESSAGE_ACTION_MIGRATE_CONVERSATIONS);
             }
         }
         commands.add(MESSAGE_ACTION_CLOSE_CONSOLE);
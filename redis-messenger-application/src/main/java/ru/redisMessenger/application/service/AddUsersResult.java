@@ -0,0 +1,25 @@
+package ru.redisMessenger.application.service;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * result of bulk adding of users
+ */
+@Data
+public class AddUsersResult {
+
+    private final List<String> addedUserKeys;
+    private final Map<String, String> conflicts;
+    private final long elapsedMillis;
+
+    /**
+     * @return long added users per second
+     */
+    public long getUsersPerSecond() {
+        return elapsedMillis == 0 ? addedUserKeys.size() * 1000L : addedUserKeys.size() * 1000L / elapsedMillis;
+    }
+
+}
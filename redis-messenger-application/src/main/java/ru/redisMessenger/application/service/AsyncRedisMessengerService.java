@@ -0,0 +1,163 @@
+package ru.redisMessenger.application.service;
+
+import lombok.extern.log4j.Log4j2;
+import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.core.entities.Group;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.User;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * non-blocking variant of {@link RedisMessengerService}
+ * operations are queued and executed by redis.async.threads threads, every thread holds one connection of pool while it works,
+ * so callers can start thousands of operations without a thread per operation
+ * when the queue of redis.async.queue.capacity operations is full, new operations fail with {@link RejectedExecutionException}
+ * errors of operations complete futures exceptionally with the same exceptions as blocking methods
+ */
+@Log4j2
+public class AsyncRedisMessengerService {
+
+    private final RedisMessengerService service;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * default constructor
+     * @param service {@link RedisMessengerService} executes operations
+     */
+    public AsyncRedisMessengerService(RedisMessengerService service) {
+        Configuration configuration = Configuration.getInstance();
+        int threads = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_ASYNC_THREADS.getPropertyName()));
+        int queueCapacity = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_ASYNC_QUEUE_CAPACITY.getPropertyName()));
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.service = service;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "redis-messenger-async-".concat(String.valueOf(threadNumber.getAndIncrement())));
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @param userKey {@link String} userKey({@link String} user)
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#getUser(String)}
+     */
+    public CompletableFuture<User> getUserAsync(String userKey) {
+        return call(() -> service.getUser(userKey));
+    }
+
+    /**
+     * @param user {@link User} created user
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#addUser(User)}
+     */
+    public CompletableFuture<String> addUserAsync(User user) {
+        return call(() -> service.addUser(user));
+    }
+
+    /**
+     * @param user {@link User} deleted user
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#deleteUser(User)}
+     */
+    public CompletableFuture<Long> deleteUserAsync(User user) {
+        return call(() -> service.deleteUser(user));
+    }
+
+    /**
+     * @param message {@link Message} sent message
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#sendMessage(Message)}
+     */
+    public CompletableFuture<Message> sendMessageAsync(Message message) {
+        return call(() -> service.sendMessage(message));
+    }
+
+    /**
+     * @param message {@link Message} text and author
+     * @param recipients {@link Collection<User>} target users
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#broadcast(Message, Collection)}
+     */
+    public CompletableFuture<BroadcastResult> broadcastAsync(Message message, Collection<User> recipients) {
+        return call(() -> service.broadcast(message, recipients));
+    }
+
+    /**
+     * @param userFrom {@link User}
+     * @param userTo {@link User}
+     * @param cursor {@link String} from previous page, null for the first page
+     * @param limit int max size of page
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#getMessages(User, User, String, int)}
+     */
+    public CompletableFuture<MessagesPage> getMessagesAsync(User userFrom, User userTo, String cursor, int limit) {
+        return call(() -> service.getMessages(userFrom, userTo, cursor, limit));
+    }
+
+    /**
+     * @param group {@link Group} target group
+     * @param message {@link Message} text and author
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#sendGroupMessage(Group, Message)}
+     */
+    public CompletableFuture<Message> sendGroupMessageAsync(Group group, Message message) {
+        return call(() -> service.sendGroupMessage(group, message));
+    }
+
+    /**
+     * @param group {@link Group}
+     * @param member {@link User} reader
+     * @param cursor {@link String} from previous page, null for the first page
+     * @param limit int max size of page
+     * @return {@link CompletableFuture} of {@link RedisMessengerService#getGroupMessages(Group, User, String, int)}
+     */
+    public CompletableFuture<MessagesPage> getGroupMessagesAsync(Group group, User member, String cursor, int limit) {
+        return call(() -> service.getGroupMessages(group, member, cursor, limit));
+    }
+
+    /**
+     * @return int count of operations waiting for a thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * stop accepting operations and wait until queued operations finish
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                log.warn("asynchronous operations aren't finished");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * queue operation
+     * @param operation {@link Callable} blocking operation
+     * @param <T> type of result
+     * @return {@link CompletableFuture} completed by result or exception of operation
+     */
+    private <T> CompletableFuture<T> call(Callable<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+}
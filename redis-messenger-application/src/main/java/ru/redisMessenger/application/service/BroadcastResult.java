@@ -0,0 +1,31 @@
+package ru.redisMessenger.application.service;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * result of broadcast of message
+ */
+@Data
+public class BroadcastResult {
+
+    private final Map<String, Status> statuses;
+    private final long elapsedMillis;
+
+    /**
+     * @param status {@link Status}
+     * @return long count of recipients with status
+     */
+    public long getCount(Status status) {
+        return statuses.values().stream().filter(status::equals).count();
+    }
+
+    /**
+     * status of delivery to one recipient
+     */
+    public enum Status {
+        DELIVERED, USER_NOT_FOUND, FAILED
+    }
+
+}
@@ -0,0 +1,204 @@
+package ru.redisMessenger.application.service;
+
+import lombok.extern.log4j.Log4j2;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.application.util.Flow;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.core.entities.Message;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * publisher of live messages of one chat
+ * every subscriber listens to chat channel by own listener and has own buffer of chat.publisher.buffer.size messages,
+ * messages are passed to subscriber only on demand, when buffer is full chat.publisher.overflow is applied:
+ * drop_oldest - the oldest buffered message is dropped, fail - subscription is cancelled with error,
+ * block - dispatching of channel waits for demand, it also holds other channels dispatched by the same thread
+ */
+@Log4j2
+public class ChatPublisher implements Flow.Publisher<Message> {
+
+    private final Function<Consumer<Message>, SubscriptionManager.Subscription> channelSubscriber;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * default constructor
+     * @param channelSubscriber {@link Function} subscribes listener to chat channel
+     */
+    ChatPublisher(Function<Consumer<Message>, SubscriptionManager.Subscription> channelSubscriber) {
+        this(channelSubscriber,
+                Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.CHAT_PUBLISHER_BUFFER_SIZE.getPropertyName())),
+                OverflowPolicy.valueOf(Configuration.getInstance().getProperty(Configuration.Property.CHAT_PUBLISHER_OVERFLOW.getPropertyName()).toUpperCase()));
+    }
+
+    /**
+     * constructor
+     * @param channelSubscriber {@link Function} subscribes listener to chat channel
+     * @param bufferSize int max count of buffered messages of one subscriber
+     * @param overflowPolicy {@link OverflowPolicy} applied when buffer is full
+     */
+    ChatPublisher(Function<Consumer<Message>, SubscriptionManager.Subscription> channelSubscriber, int bufferSize, OverflowPolicy overflowPolicy) {
+        this.channelSubscriber = channelSubscriber;
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Message> subscriber) {
+        ChatSubscription subscription = new ChatSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.listen();
+    }
+
+    /**
+     * what is done with new message when buffer of subscriber is full
+     */
+    public enum OverflowPolicy {
+
+        DROP_OLDEST, FAIL, BLOCK
+
+    }
+
+    /**
+     * subscription of one subscriber with own buffer and demand
+     */
+    private class ChatSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Message> subscriber;
+        private final Deque<Message> buffer = new ArrayDeque<>();
+        //only one thread passes messages to subscriber at a time
+        private final AtomicInteger drains = new AtomicInteger();
+        private long demand;
+        private long droppedMessages;
+        private boolean cancelled;
+        private Throwable error;
+        private SubscriptionManager.Subscription channelSubscription;
+
+        /**
+         * default constructor
+         * @param subscriber {@link Flow.Subscriber} receiver of messages
+         */
+        private ChatSubscription(Flow.Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (cancelled)
+                    return;
+                if (n <= 0) {
+                    error = new IllegalArgumentException("demand must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    notifyAll();
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            SubscriptionManager.Subscription currentChannelSubscription;
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+                notifyAll();
+                currentChannelSubscription = channelSubscription;
+            }
+            if (currentChannelSubscription != null)
+                currentChannelSubscription.unsubscribe();
+        }
+
+        /**
+         * start listening to chat channel
+         */
+        private void listen() {
+            SubscriptionManager.Subscription subscription = channelSubscriber.apply(this::offer);
+            synchronized (this) {
+                channelSubscription = subscription;
+                if (!cancelled)
+                    return;
+            }
+            subscription.unsubscribe();
+        }
+
+        /**
+         * buffer message received from channel
+         * @param message {@link Message}
+         */
+        private void offer(Message message) {
+            synchronized (this) {
+                while (!cancelled && error == null && buffer.size() >= bufferSize) {
+                    if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                        buffer.pollFirst();
+                        if (++droppedMessages % bufferSize == 1)
+                            log.warn("subscriber is slow, {} messages are dropped", droppedMessages);
+                    } else if (overflowPolicy == OverflowPolicy.FAIL) {
+                        error = new RedisMessengerException("buffer of ".concat(String.valueOf(bufferSize)).concat(" messages is full"));
+                    } else {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            //message can't be buffered, so subscriber gets error instead of losing it silently
+                            error = new RedisMessengerException("waiting for free place in buffer is interrupted");
+                        }
+                    }
+                }
+                if (!cancelled && error == null)
+                    buffer.addLast(message);
+            }
+            drain();
+        }
+
+        /**
+         * pass buffered messages to subscriber while it has demand, error is passed after cancel
+         */
+        private void drain() {
+            if (drains.getAndIncrement() != 0)
+                return;
+            do {
+                while (true) {
+                    Message message;
+                    Throwable currentError = null;
+                    synchronized (this) {
+                        if (cancelled)
+                            break;
+                        if (error != null) {
+                            currentError = error;
+                            message = null;
+                        } else if (demand > 0 && !buffer.isEmpty()) {
+                            message = buffer.pollFirst();
+                            if (demand != Long.MAX_VALUE)
+                                demand--;
+                            notifyAll();
+                        } else {
+                            break;
+                        }
+                    }
+                    if (currentError != null) {
+                        cancel();
+                        subscriber.onError(currentError);
+                        break;
+                    }
+                    try {
+                        subscriber.onNext(message);
+                    } catch (RuntimeException e) {
+                        log.error("error in subscriber of chat:\n{}", e.getLocalizedMessage());
+                        cancel();
+                        break;
+                    }
+                }
+            } while (drains.decrementAndGet() != 0);
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package ru.redisMessenger.application.service;
+
+import lombok.extern.log4j.Log4j2;
+import ru.redisMessenger.application.util.Configuration;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * background job, which moves messages older than message.retention.days from redis to archive
+ * every message.archive.interval.minutes, the job isn't started when retention is disabled
+ * or when message.archive.job.enabled is false, so only one designated process archives messages
+ */
+@Log4j2
+public class MessageRetentionJob {
+
+    private final RedisMessengerService service;
+    private final boolean enabled;
+    private final int retentionDays;
+    private final long intervalMinutes;
+    private ScheduledExecutorService executor;
+
+    /**
+     * default constructor
+     * @param service {@link RedisMessengerService} archives messages
+     */
+    public MessageRetentionJob(RedisMessengerService service) {
+        Configuration configuration = Configuration.getInstance();
+        this.service = service;
+        this.enabled = Boolean.parseBoolean(configuration.getProperty(Configuration.Property.MESSAGE_ARCHIVE_JOB_ENABLED.getPropertyName()));
+        this.retentionDays = Integer.parseInt(configuration.getProperty(Configuration.Property.MESSAGE_RETENTION_DAYS.getPropertyName()));
+        this.intervalMinutes = Long.parseLong(configuration.getProperty(Configuration.Property.MESSAGE_ARCHIVE_INTERVAL_MINUTES.getPropertyName()));
+    }
+
+    /**
+     * start job, the first run is immediate
+     */
+    public synchronized void start() {
+        if (!enabled || retentionDays <= 0 || executor != null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::archive, 0, intervalMinutes, TimeUnit.MINUTES);
+        log.info("messages older than {} days are archived every {} minutes", retentionDays, intervalMinutes);
+    }
+
+    /**
+     * stop job, waits until current run finishes
+     */
+    public synchronized void close() {
+        if (executor == null)
+            return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                log.warn("archiving of messages isn't finished");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * one run, errors don't stop next runs
+     */
+    private void archive() {
+        try {
+            service.archiveMessages();
+        } catch (RuntimeException e) {
+            log.error("error while archiving messages:\n{}", e.getLocalizedMessage());
+        }
+    }
+
+}
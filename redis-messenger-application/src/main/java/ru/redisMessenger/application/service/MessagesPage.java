@@ -0,0 +1,23 @@
+package ru.redisMessenger.application.service;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * page of conversation history, messages are ordered from the newest
+ */
+@Data
+public class MessagesPage {
+
+    private final List<String> messages;
+    private final String nextCursor;
+
+    /**
+     * @return boolean true when there are older messages
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+}
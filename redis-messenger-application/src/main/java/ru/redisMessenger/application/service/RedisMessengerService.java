@@ -1,20 +1,57 @@
 package ru.redisMessenger.application.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 import ru.redisMessenger.application.exception.RedisMessengerException;
 import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.application.util.Flow;
 import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.LuaScript;
+import ru.redisMessenger.application.util.MessageArchive;
+import ru.redisMessenger.application.util.MessageOutbox;
+import ru.redisMessenger.application.util.Metrics;
+import ru.redisMessenger.application.util.OperationMetrics;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.core.entities.Group;
 import ru.redisMessenger.core.entities.Message;
 import ru.redisMessenger.core.entities.User;
-import ru.redisMessenger.core.util.JacksonHelper;
+import ru.redisMessenger.core.util.BinaryMessageCodec;
+import ru.redisMessenger.core.util.BinaryUserCodec;
+import ru.redisMessenger.core.util.Codec;
+import ru.redisMessenger.core.util.FormatDetectingCodec;
+import ru.redisMessenger.core.util.JsonCodec;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * business logic
@@ -26,28 +63,74 @@ public class RedisMessengerService {
     private final String REDIS_KEY_USER_PREFIX_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_KEY_USER_PREFIX.getPropertyName());
     private final String REDIS_KEY_USERS_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_KEY_USERS.getPropertyName());
     private final String REDIS_CHANNEL_CHAT_PREFIX_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_CHANNEL_CHAT_PREFIX.getPropertyName());
+    private final String REDIS_KEY_GROUP_PREFIX_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_KEY_GROUP_PREFIX.getPropertyName());
     private final String REDIS_HASH_PREFIX_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_HASH_PREFIX.getPropertyName());
+    private final String REDIS_VALUE_CODEC_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.REDIS_VALUE_CODEC.getPropertyName());
+    private final boolean REDIS_MESSAGE_NORMALIZED_PROPERTY = Boolean.parseBoolean(Configuration.getInstance().getProperty(Configuration.Property.REDIS_MESSAGE_NORMALIZED.getPropertyName()));
+    private final String MESSAGE_OUTBOX_MODE_PROPERTY = Configuration.getInstance().getProperty(Configuration.Property.MESSAGE_OUTBOX_MODE.getPropertyName());
+    private final int MESSAGE_RETENTION_DAYS_PROPERTY = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.MESSAGE_RETENTION_DAYS.getPropertyName()));
+    private final int MESSAGE_ARCHIVE_SEGMENT_SIZE_PROPERTY = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.MESSAGE_ARCHIVE_SEGMENT_SIZE.getPropertyName()));
+    private final int MESSAGE_BROADCAST_BATCH_SIZE_PROPERTY = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.MESSAGE_BROADCAST_BATCH_SIZE.getPropertyName()));
+    private final int USER_BULK_BATCH_SIZE_PROPERTY = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.USER_BULK_BATCH_SIZE.getPropertyName()));
 
-    private final String[] MESSAGE_IGNORABLE_FILTER = new String[]{"messages"};
-    private final String[] USER_DETAILS_IGNORABLE_FILTER = new String[]{"messages", "description", "dateCreate", "rights"};
+    private static final String[] MESSAGE_IGNORABLE_FILTER = new String[]{"messages"};
+    private static final String[] USER_DETAILS_IGNORABLE_FILTER = new String[]{"messages", "description", "dateCreate", "rights"};
 
-    private final FilterProvider USER_ONLY_FILTER_PROVIDER = new SimpleFilterProvider()
+    private static final FilterProvider USER_ONLY_FILTER_PROVIDER = new SimpleFilterProvider()
             .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept(MESSAGE_IGNORABLE_FILTER));
-    private final FilterProvider MESSAGES_FILTER_PROVIDER = new SimpleFilterProvider()
+    private static final FilterProvider MESSAGES_FILTER_PROVIDER = new SimpleFilterProvider()
             .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept(USER_DETAILS_IGNORABLE_FILTER))
             .addFilter("Message", SimpleBeanPropertyFilter.serializeAll());
 
+    private static final String CODEC_BINARY = "binary";
+    private static final String OUTBOX_NONE = "none";
+    private static final String OUTBOX_FALLBACK = "fallback";
+    private static final String OUTBOX_ALWAYS = "always";
+    private static final String TYPE_SET = "set";
+    private static final String TYPE_SORTED_SET = "zset";
+    private static final String ERROR_WRONG_TYPE = "WRONGTYPE";
+    private static final String GROUP_MEMBERS_SUFFIX = "members";
+
+    private final Codec<Group> GROUP_CODEC = new JsonCodec<>(new SimpleFilterProvider(), Group.class);
+    private final JsonCodec<Message> MESSAGE_JSON_CODEC = new JsonCodec<>(MESSAGES_FILTER_PROVIDER, Message.class);
+    private final Codec<User> USER_CODEC = codec(new JsonCodec<>(USER_ONLY_FILTER_PROVIDER, User.class), new BinaryUserCodec());
+    //both formats of message hold only type and name of users, binary layout is the compact one
+    private final Codec<Message> MESSAGE_CODEC = codec(MESSAGE_JSON_CODEC, new BinaryMessageCodec());
+
+    private final OperationMetrics GET_USER_METRICS = Metrics.getInstance().serviceOperation("getUser");
+    private final OperationMetrics SEND_MESSAGE_METRICS = Metrics.getInstance().serviceOperation("sendMessage");
+    private final OperationMetrics GET_MESSAGES_METRICS = Metrics.getInstance().serviceOperation("getMessages");
+
     /**
      * get user by name and class
+     * users are cached, repeated lookups don't read redis until user is added or deleted again
      * @param userKey {@link String} userKey({@link String} user)
      * @return {@link User} as {@link String}
      * @throws RedisMessengerException when user doesn't exist
      */
     public User getUser(String userKey) throws RedisMessengerException, IOException {
-        String userValue = JedisClient.getInstance().getValue(userKey);
+        long start = System.nanoTime();
+        try {
+            return UserCache.getInstance().get(userKey, this::readUser);
+        } catch (Exception e) {
+            GET_USER_METRICS.recordError();
+            throw e;
+        } finally {
+            GET_USER_METRICS.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * read user from redis
+     * @param userKey {@link String} userKey({@link String} user)
+     * @return {@link User}
+     * @throws RedisMessengerException when user doesn't exist
+     */
+    private User readUser(String userKey) throws RedisMessengerException, IOException {
+        byte[] userValue = JedisClient.getInstance().getBinaryValue(userKey);
         if (userValue == null)
             throw new RedisMessengerException("user with userKey ".concat(userKey).concat(" doesn't exist"));
-        return new JacksonHelper<User>(USER_ONLY_FILTER_PROVIDER).getDeserializedObject(userValue, User.class);
+        return USER_CODEC.decode(userValue);
     }
 
     /**
@@ -62,16 +145,84 @@ public class RedisMessengerService {
         String userKey = userKey(user);
         if (JedisClient.getInstance().getValue(userKey) != null)
             throw new RedisMessengerException("user with userKey ".concat(userKey).concat(" already exists"));
-        String userStr = null;
+        byte[] userValue;
         try {
             user.setDateCreate(Calendar.getInstance().getTime());
-            userStr = new JacksonHelper<User>(USER_ONLY_FILTER_PROVIDER).getSerializedObject(user);
-        } catch (JsonProcessingException e) {
+            userValue = USER_CODEC.encode(user);
+        } catch (IOException e) {
             log.error("error while adding user {}:\n{}", user, e.getLocalizedMessage());
+            throw new RedisMessengerException("user with userKey ".concat(userKey).concat(" is incorrect"));
         }
-        JedisClient.getInstance().setValue(userKey, userStr);
+        JedisClient.getInstance().setValue(userKey, userValue);
         JedisClient.getInstance().putValues(REDIS_KEY_USERS_PROPERTY, new String[]{userKey});
-        return userStr;
+        UserCache.getInstance().publishInvalidation(userKey);
+        return userKey;
+    }
+
+    /**
+     * add many users, users are checked and written in pipelined batches of user.bulk.batch.size,
+     * so every batch costs two round trips: SETNX of all users and SADD of added ones to users
+     * @param users {@link Collection<User>} created users
+     * @return {@link AddUsersResult} keys of added users and reasons of conflicts by keys of users
+     */
+    public AddUsersResult addUsers(Collection<User> users) {
+        long start = System.currentTimeMillis();
+        List<String> addedUserKeys = new ArrayList<>();
+        Map<String, String> conflicts = new LinkedHashMap<>();
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        Set<String> userKeys = new HashSet<>();
+        for (User user : users) {
+            String userKey = userKey(user);
+            if (user.getName() == null) {
+                conflicts.put(userKey, "username must be filled");
+                continue;
+            }
+            if (!userKeys.add(userKey)) {
+                conflicts.put(userKey, "user is duplicated");
+                continue;
+            }
+            try {
+                user.setDateCreate(Calendar.getInstance().getTime());
+                batch.put(userKey, USER_CODEC.encode(user));
+            } catch (IOException e) {
+                log.error("error while adding user {}:\n{}", user, e.getLocalizedMessage());
+                conflicts.put(userKey, "user is incorrect");
+                continue;
+            }
+            if (batch.size() == USER_BULK_BATCH_SIZE_PROPERTY)
+                addUsersBatch(batch, addedUserKeys, conflicts);
+        }
+        addUsersBatch(batch, addedUserKeys, conflicts);
+        AddUsersResult result = new AddUsersResult(addedUserKeys, conflicts, System.currentTimeMillis() - start);
+        log.info("added {} users, {} conflicts in {} ms, {} users/sec", addedUserKeys.size(), conflicts.size(),
+                result.getElapsedMillis(), result.getUsersPerSecond());
+        return result;
+    }
+
+    /**
+     * write batch of users, existing users aren't overwritten
+     * new users aren't invalidated: users which don't exist are never cached
+     * @param batch {@link Map} encoded users by keys, it is cleared after writing
+     * @param addedUserKeys {@link List<String>} keys of added users
+     * @param conflicts {@link Map} reasons of conflicts by keys of users
+     */
+    private void addUsersBatch(Map<String, byte[]> batch, List<String> addedUserKeys, Map<String, String> conflicts) {
+        if (batch.isEmpty())
+            return;
+        List<Object> replies = JedisClient.getInstance().pipelined(pipeline ->
+                batch.forEach((userKey, userValue) -> pipeline.setnx(SafeEncoder.encode(userKey), userValue)));
+        List<String> batchAddedUserKeys = new ArrayList<>();
+        int reply = 0;
+        for (String userKey : batch.keySet()) {
+            if (Long.valueOf(1).equals(replies.get(reply++)))
+                batchAddedUserKeys.add(userKey);
+            else
+                conflicts.put(userKey, "user already exists");
+        }
+        if (!batchAddedUserKeys.isEmpty())
+            JedisClient.getInstance().putValues(REDIS_KEY_USERS_PROPERTY, batchAddedUserKeys.toArray(new String[0]));
+        addedUserKeys.addAll(batchAddedUserKeys);
+        batch.clear();
     }
 
     /**
@@ -85,6 +236,7 @@ public class RedisMessengerService {
             throw new RedisMessengerException("username must be filled");
         String userKey = userKey(user);
         Long deletedUsersCount = JedisClient.getInstance().deleteValuesByKey(userKey);
+        UserCache.getInstance().publishInvalidation(userKey);
         if (deletedUsersCount == 0L)
             throw new RedisMessengerException("user with userKey ".concat(userKey).concat(" doesn't exist"));
         return deletedUsersCount;
@@ -93,134 +245,783 @@ public class RedisMessengerService {
     /**
      * create new {@link Message} and send it to {@link User}
      * @param message {@link Message}
-     * @return {@link Message} as {@link String}
+     * @return {@link Message} sent message
+     * @throws RedisMessengerException when target {@link User} doesn't exist or {@link Message} is incorrect
+     */
+    public Message sendMessage(Message message) throws RedisMessengerException {
+        long start = System.nanoTime();
+        try {
+            return send(message);
+        } catch (Exception e) {
+            SEND_MESSAGE_METRICS.recordError();
+            throw e;
+        } finally {
+            SEND_MESSAGE_METRICS.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * store and publish {@link Message}
+     * @param message {@link Message}
+     * @return {@link Message} sent message
      * @throws RedisMessengerException when target {@link User} doesn't exist or {@link Message} is incorrect
      */
-    public String sendMessage(Message message) throws RedisMessengerException {
+    private Message send(Message message) throws RedisMessengerException {
         if (message.getText() == null || message.getTo() == null)
             throw new RedisMessengerException("all fields must be filled");
         User userTo = message.getTo();
         User userFrom = message.getFrom();
         message.setDateCreate(Calendar.getInstance().getTime());
+        message.setId(UUID.randomUUID().toString());
+        byte[] messageValue;
+        try {
+            messageValue = MESSAGE_CODEC.encode(message);
+        } catch (IOException e) {
+            log.error("error while sending message {}:\n{}", message, e.getLocalizedMessage());
+            throw new RedisMessengerException("message is incorrect");
+        }
+        String userFromKey = userKey(userFrom);
         String userToKey = userKey(userTo);
-        String userToValue = JedisClient.getInstance().getValue(userToKey);
-        if (userToValue == null)
+
+        //one atomic call: check target user, store and publish
+        List<String> keys = Arrays.asList(userToKey, conversationMessagesKey(userFromKey, userToKey));
+        List<byte[]> args = Arrays.asList(SafeEncoder.encode(conversationChatChannel(userFromKey, userToKey)), messageValue,
+                SafeEncoder.encode(String.valueOf(message.getDateCreate().getTime())));
+        //messages go through outbox while it has earlier messages, so they are published in order
+        if (OUTBOX_ALWAYS.equals(MESSAGE_OUTBOX_MODE_PROPERTY) || (OUTBOX_FALLBACK.equals(MESSAGE_OUTBOX_MODE_PROPERTY) && MessageOutbox.hasPendingCalls()))
+            return sendToOutbox(message, keys, args);
+        Object delivered;
+        try {
+            delivered = withOrderedHistory(keys.get(1), () -> JedisClient.getInstance().evalBinaryScript(LuaScript.SEND_MESSAGE, keys, args));
+        } catch (JedisConnectionException e) {
+            if (!OUTBOX_FALLBACK.equals(MESSAGE_OUTBOX_MODE_PROPERTY))
+                throw e;
+            log.warn("redis is unavailable, message is sent through outbox:\n{}", e.getLocalizedMessage());
+            return sendToOutbox(message, keys, args);
+        }
+        if (delivered == null)
             throw new RedisMessengerException("user with userKey ".concat(userToKey).concat(" doesn't exist"));
-        String messageValue = null;
+        return message;
+    }
+
+    /**
+     * write message to local outbox, it is stored and published when outbox is replayed to redis
+     * recipient is checked by send_message script when outbox is replayed, message to unknown user is dropped with warning
+     * @param message {@link Message} sent message
+     * @param keys {@link List<String>} keys of send_message script
+     * @param args {@link List<byte[]>} arguments of send_message script
+     * @return {@link Message} sent message
+     * @throws RedisMessengerException when message isn't written to outbox
+     */
+    private Message sendToOutbox(Message message, List<String> keys, List<byte[]> args) throws RedisMessengerException {
+        try {
+            MessageOutbox.getInstance().append(LuaScript.SEND_MESSAGE, keys, args);
+        } catch (IOException e) {
+            log.error("error while writing message {} to outbox:\n{}", message, e.getLocalizedMessage());
+            throw new RedisMessengerException("message isn't sent");
+        }
+        return message;
+    }
+
+    /**
+     * start replay of messages left in outbox by previous process
+     * @throws RedisMessengerException when outbox isn't readable
+     */
+    public void startOutbox() throws RedisMessengerException {
+        if (OUTBOX_NONE.equals(MESSAGE_OUTBOX_MODE_PROPERTY))
+            return;
         try {
-            messageValue = new JacksonHelper<Message>(MESSAGES_FILTER_PROVIDER).getSerializedObject(message);
-        } catch (JsonProcessingException e) {
+            MessageOutbox.getInstance();
+        } catch (IOException e) {
+            log.error("error while opening outbox:\n{}", e.getLocalizedMessage());
+            throw new RedisMessengerException("outbox isn't readable");
+        }
+    }
+
+    /**
+     * release subscription of user cache shared by all services of process, the next lookup of user subscribes again
+     */
+    public void close() {
+        UserCache.closeInstance();
+    }
+
+    /**
+     * send the same {@link Message} to many users
+     * message is encoded once without recipient, the conversation identifies recipient,
+     * messages are stored and published by send_message script called in pipelined batches of message.broadcast.batch.size
+     * @param message {@link Message} text and author
+     * @param recipients {@link Collection<User>} target users
+     * @return {@link BroadcastResult} statuses by keys of recipients
+     * @throws RedisMessengerException when {@link Message} is incorrect
+     */
+    public BroadcastResult broadcast(Message message, Collection<User> recipients) throws RedisMessengerException {
+        if (message.getText() == null)
+            throw new RedisMessengerException("all fields must be filled");
+        long start = System.currentTimeMillis();
+        message.setTo(null);
+        message.setDateCreate(Calendar.getInstance().getTime());
+        message.setId(UUID.randomUUID().toString());
+        byte[] messageValue;
+        try {
+            messageValue = MESSAGE_CODEC.encode(message);
+        } catch (IOException e) {
             log.error("error while sending message {}:\n{}", message, e.getLocalizedMessage());
+            throw new RedisMessengerException("message is incorrect");
         }
-        String userFromKey = userKey(userFrom);
+        byte[] score = SafeEncoder.encode(String.valueOf(message.getDateCreate().getTime()));
+        String userFromKey = userKey(message.getFrom());
+        Map<String, BroadcastResult.Status> statuses = new LinkedHashMap<>();
+        List<String> batch = new ArrayList<>();
+        Set<String> userToKeys = new HashSet<>();
+        for (User recipient : recipients) {
+            String userToKey = userKey(recipient);
+            if (!userToKeys.add(userToKey))
+                continue;
+            batch.add(userToKey);
+            if (batch.size() == MESSAGE_BROADCAST_BATCH_SIZE_PROPERTY)
+                broadcastBatch(userFromKey, batch, messageValue, score, statuses);
+        }
+        broadcastBatch(userFromKey, batch, messageValue, score, statuses);
+        BroadcastResult result = new BroadcastResult(statuses, System.currentTimeMillis() - start);
+        log.info("message is broadcast to {} of {} users in {} ms", result.getCount(BroadcastResult.Status.DELIVERED),
+                statuses.size(), result.getElapsedMillis());
+        return result;
+    }
 
-        String hashUserFromKey = hashUserKey(userFromKey);
-        String hashUserToKey = hashUserKey(userToKey);
-        String messagesUserFromKey = messagesUserKey(userFromKey);
-        String messagesUserToKey = messagesUserKey(userToKey);
-
-        String messagesUsersFromToKey = messagesUsersKey(userFromKey, userToKey);
-
-        String userFromToKey = JedisClient.getInstance().getHashValue(hashUserFromKey, messagesUserToKey);
-        if (userFromToKey != null)
-            JedisClient.getInstance().putValues(userFromToKey, new String[]{messageValue});
-        else {
-            String userToFromKey = JedisClient.getInstance().getHashValue(hashUserToKey, messagesUserFromKey);
-            if (userToFromKey != null)
-                JedisClient.getInstance().putValues(userToFromKey, new String[]{messageValue});
-            else {
-                JedisClient.getInstance().createHashValue(hashUserFromKey, messagesUserToKey, messagesUsersFromToKey);
-                JedisClient.getInstance().createHashValue(hashUserToKey, messagesUserFromKey, messagesUsersFromToKey);
-                JedisClient.getInstance().putValues(messagesUsersFromToKey, new String[]{messageValue});
+    /**
+     * store and publish message for batch of recipients in one pipeline
+     * @param userFromKey {@link String} author
+     * @param batch {@link List<String>} keys of recipients, it is cleared after sending
+     * @param messageValue byte[] encoded message
+     * @param score byte[] time of message
+     * @param statuses {@link Map} statuses by keys of recipients
+     */
+    private void broadcastBatch(String userFromKey, List<String> batch, byte[] messageValue, byte[] score,
+                                Map<String, BroadcastResult.Status> statuses) {
+        if (batch.isEmpty())
+            return;
+        List<List<String>> keys = new ArrayList<>();
+        List<List<byte[]>> args = new ArrayList<>();
+        for (String userToKey : batch) {
+            keys.add(Arrays.asList(userToKey, conversationMessagesKey(userFromKey, userToKey)));
+            args.add(Arrays.asList(SafeEncoder.encode(conversationChatChannel(userFromKey, userToKey)), messageValue, score));
+        }
+        List<Object> replies = JedisClient.getInstance().evalBinaryScripts(LuaScript.SEND_MESSAGE, keys, args);
+        for (int i = 0; i < batch.size(); i++) {
+            Object reply = replies.get(i);
+            if (reply instanceof JedisDataException && isWrongType((JedisDataException) reply)) {
+                //unordered history written by previous versions is converted and message is sent again
+                convertToSortedSet(keys.get(i).get(1));
+                try {
+                    reply = JedisClient.getInstance().evalBinaryScript(LuaScript.SEND_MESSAGE, keys.get(i), args.get(i));
+                } catch (JedisDataException e) {
+                    reply = e;
+                }
+            }
+            if (reply instanceof Exception) {
+                log.error("error while sending message to {}:\n{}", batch.get(i), ((Exception) reply).getLocalizedMessage());
+                statuses.put(batch.get(i), BroadcastResult.Status.FAILED);
+            } else {
+                statuses.put(batch.get(i), reply == null ? BroadcastResult.Status.USER_NOT_FOUND : BroadcastResult.Status.DELIVERED);
             }
         }
+        batch.clear();
+    }
 
-        String chatUserFromChannel = chatUserChannel(userFromKey);
-        String chatUserToChannel = chatUserChannel(userToKey);
-
-        String chatUsersFromToChannel = chatUsersChannel(userFromKey, userToKey);
-
-        userFromToKey = JedisClient.getInstance().getHashValue(hashUserFromKey, chatUserToChannel);
-        if (userFromToKey != null)
-            JedisClient.getInstance().publish(userFromToKey, messageValue);
-        else {
-            String userToFromKey = JedisClient.getInstance().getHashValue(hashUserToKey, chatUserFromChannel);
-            if (userToFromKey != null)
-                JedisClient.getInstance().publish(userToFromKey, messageValue);
-            else {
-                JedisClient.getInstance().createHashValue(hashUserFromKey, chatUserToChannel, chatUsersFromToChannel);
-                JedisClient.getInstance().createHashValue(hashUserToKey, chatUserFromChannel, chatUsersFromToChannel);
-                JedisClient.getInstance().publish(chatUsersFromToChannel, messageValue);
+    /**
+     * get all messages before two users
+     * @param userFrom {@link User}
+     * @param userTo {@link User}
+     * @return {@link Set<String>} ordered from the oldest, archived messages go first
+     * @throws RedisMessengerException when archive isn't readable
+     */
+    public Set<String> getMessages(User userFrom, User userTo) throws RedisMessengerException {
+        String messagesKey = conversationMessagesKey(userKey(userFrom), userKey(userTo));
+        List<byte[]> values = readArchive(messagesKey, Double.POSITIVE_INFINITY, 0, Integer.MAX_VALUE).stream()
+                .map(Tuple::getBinaryElement).collect(Collectors.toList());
+        Collections.reverse(values);
+        values.addAll(withOrderedHistory(messagesKey, () -> JedisClient.getInstance().getSortedBinaryValues(messagesKey)));
+        Set<String> messages = new LinkedHashSet<>();
+        for (byte[] value : values) {
+            String message = messageJson(value);
+            if (message != null)
+                messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * get page of messages before two users, pages go from the newest message to the oldest
+     * cursor is time of the last returned message and count of returned messages with this time,
+     * so pages are stable when new messages are sent
+     * @param userFrom {@link User}
+     * @param userTo {@link User}
+     * @param cursor {@link String} from previous page, null for the first page
+     * @param limit int max size of page
+     * @return {@link MessagesPage}
+     * @throws RedisMessengerException when cursor or limit is incorrect
+     */
+    public MessagesPage getMessages(User userFrom, User userTo, String cursor, int limit) throws RedisMessengerException {
+        long start = System.nanoTime();
+        try {
+            return messagesPage(conversationMessagesKey(userKey(userFrom), userKey(userTo)), cursor, limit);
+        } catch (Exception e) {
+            GET_MESSAGES_METRICS.recordError();
+            throw e;
+        } finally {
+            GET_MESSAGES_METRICS.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * get page of history from the newest message
+     * @param messagesKey {@link String} history of conversation or group
+     * @param cursor {@link String} from previous page, null for the first page
+     * @param limit int max size of page
+     * @return {@link MessagesPage}
+     * messages moved to archive are read from archive when redis has no older messages
+     * @throws RedisMessengerException when cursor or limit is incorrect or archive isn't readable
+     */
+    private MessagesPage messagesPage(String messagesKey, String cursor, int limit) throws RedisMessengerException {
+        if (limit <= 0)
+            throw new RedisMessengerException("limit must be positive");
+        long maxScore = Long.MAX_VALUE;
+        int offset = 0;
+        if (cursor != null) {
+            String[] cursorParts = cursor.split(":");
+            try {
+                maxScore = Long.parseLong(cursorParts[0]);
+                offset = Integer.parseInt(cursorParts[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new RedisMessengerException("cursor ".concat(cursor).concat(" is incorrect"));
             }
+            if (offset < 0)
+                throw new RedisMessengerException("cursor ".concat(cursor).concat(" is incorrect"));
         }
-        return messageValue;
+        //values at maxScore returned by previous page are skipped after merge with archive, so pages are stable
+        long pageMaxScore = maxScore;
+        int pageCount = offset + limit;
+        List<Tuple> values = new ArrayList<>(withOrderedHistory(messagesKey,
+                () -> JedisClient.getInstance().getSortedBinaryValues(messagesKey, pageMaxScore, 0, pageCount)));
+        if (values.size() < pageCount) {
+            //redis has no older messages, archived messages are older than messages in redis,
+            //messages archived by failed retention run stay in redis until the next run, they aren't repeated
+            Set<String> storedMessages = values.stream()
+                    .map(value -> new String(value.getBinaryElement(), StandardCharsets.ISO_8859_1)).collect(Collectors.toSet());
+            readArchive(messagesKey, maxScore, 0, pageCount).stream()
+                    .filter(value -> !storedMessages.contains(new String(value.getBinaryElement(), StandardCharsets.ISO_8859_1)))
+                    .forEach(values::add);
+            //sort is stable, so messages with equal time keep the same order on every page
+            values.sort(Comparator.comparingDouble(Tuple::getScore).reversed());
+        }
+        int skipped = 0;
+        while (skipped < offset && skipped < values.size() && values.get(skipped).getScore() == maxScore)
+            skipped++;
+        values = values.subList(skipped, Math.min(values.size(), skipped + limit));
+        List<String> messages = new ArrayList<>();
+        long lastScore = maxScore;
+        int countLastScore = offset;
+        for (Tuple value : values) {
+            long score = (long) value.getScore();
+            if (score == lastScore) {
+                countLastScore++;
+            } else {
+                lastScore = score;
+                countLastScore = 1;
+            }
+            String message = messageJson(value.getBinaryElement());
+            if (message != null)
+                messages.add(message);
+        }
+        String nextCursor = values.size() < limit ? null : String.join(":", String.valueOf(lastScore), String.valueOf(countLastScore));
+        return new MessagesPage(messages, nextCursor);
     }
 
     /**
-     * get all messages before two users
+     * @param messagesKey {@link String} history of conversation or group
+     * @param maxScore double the highest time of messages, inclusive
+     * @param offset int count of skipped messages with time equal to maxScore
+     * @param count int max count of messages
+     * @return {@link List<Tuple>} archived messages from the newest
+     * @throws RedisMessengerException when archive isn't readable
+     */
+    private List<Tuple> readArchive(String messagesKey, double maxScore, int offset, int count) throws RedisMessengerException {
+        try {
+            return MessageArchive.getInstance().read(messagesKey, maxScore, offset, count);
+        } catch (IOException e) {
+            log.error("error while reading archive of {}:\n{}", messagesKey, e.getLocalizedMessage());
+            throw new RedisMessengerException("archive of ".concat(messagesKey).concat(" isn't readable"));
+        }
+    }
+
+    /**
+     * iterate over all messages before two users page by page from the newest message,
+     * the next page is read from redis only when it is requested
      * @param userFrom {@link User}
      * @param userTo {@link User}
-     * @return {@link Set<String>}
+     * @param pageSize int max size of page
+     * @return {@link Iterator} of pages
+     * @throws RedisMessengerException when page size is incorrect
      */
-    public Set<String> getMessages(User userFrom, User userTo) {
-        String userFromKey = userKey(userFrom);
-        String userToKey = userKey(userTo);
+    public Iterator<List<String>> iterateMessages(User userFrom, User userTo, int pageSize) throws RedisMessengerException {
+        MessagesPage firstPage = getMessages(userFrom, userTo, null, pageSize);
+        return new Iterator<List<String>>() {
+
+            private MessagesPage page = firstPage;
 
-        String messagesUserFromKey = messagesUserKey(userFromKey);
-        String messagesUserToKey = messagesUserKey(userToKey);
-
-        String hashUserFromKey = hashUserKey(userFromKey);
-        String hashUserToKey = hashUserKey(userToKey);
-
-        String messagesUsersFromToKey = messagesUsersKey(userFromKey, userToKey);
-
-        String userFromToKey = JedisClient.getInstance().getHashValue(hashUserFromKey, messagesUserToKey);
-        if (userFromToKey != null)
-            return JedisClient.getInstance().getValues(userFromToKey);
-        else {
-            String userToFromKey = JedisClient.getInstance().getHashValue(hashUserToKey, messagesUserFromKey);
-            if (userToFromKey != null)
-                return JedisClient.getInstance().getValues(userToFromKey);
-            else {
-                JedisClient.getInstance().createHashValue(hashUserFromKey, messagesUserToKey, messagesUsersFromToKey);
-                JedisClient.getInstance().createHashValue(hashUserToKey, messagesUserFromKey, messagesUsersFromToKey);
-                return JedisClient.getInstance().getValues(messagesUsersFromToKey);
+            @Override
+            public boolean hasNext() {
+                return page != null;
             }
+
+            @Override
+            public List<String> next() {
+                if (page == null)
+                    throw new NoSuchElementException();
+                List<String> messages = page.getMessages();
+                try {
+                    page = page.hasNext() ? getMessages(userFrom, userTo, page.getNextCursor(), pageSize) : null;
+                } catch (RedisMessengerException e) {
+                    //cursor is built by service, so it is always correct
+                    throw new IllegalStateException(e);
+                }
+                return messages;
+            }
+
+        };
+    }
+
+    /**
+     * replace users referenced by message with stored users, so message has current details of users
+     * user which doesn't exist anymore is left as it is stored in message
+     * @param message {@link Message} read message
+     * @return {@link Message} the same message
+     */
+    private Message resolveUsers(Message message) {
+        message.setFrom(resolveUser(message.getFrom()));
+        message.setTo(resolveUser(message.getTo()));
+        return message;
+    }
+
+    /**
+     * @param reference {@link User} type and name of user
+     * @return {@link User} stored user or reference when user doesn't exist
+     */
+    private User resolveUser(User reference) {
+        if (reference == null)
+            return null;
+        try {
+            return getUser(userKey(reference));
+        } catch (RedisMessengerException | IOException e) {
+            log.debug("user {} of message isn't resolved:\n{}", reference.getName(), e.getLocalizedMessage());
+            return reference;
         }
     }
 
     /**
-     * subscribe to channel
+     * score of message in history, time of message
+     * json dates are written in 24-hour format, values written before it have 12-hour time without AM/PM,
+     * so they are read as morning time, legacy sets keep no insertion order to correct it
+     * @param value byte[] stored message
+     * @return double time in millis or 0 when value is incorrect
+     */
+    private double messageScore(byte[] value) {
+        try {
+            Message message = MESSAGE_CODEC.decode(value);
+            return message.getDateCreate() == null ? 0 : message.getDateCreate().getTime();
+        } catch (IOException e) {
+            log.error("error while reading message:\n{}", e.getLocalizedMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * stored message as json, json values and values of unknown format are returned as is
+     * @param value byte[] stored message
+     * @return {@link String} or null when value is incorrect
+     */
+    private String messageJson(byte[] value) {
+        if (MESSAGE_JSON_CODEC.canDecode(value) || !MESSAGE_CODEC.canDecode(value))
+            return new String(value, StandardCharsets.UTF_8);
+        try {
+            return new String(MESSAGE_JSON_CODEC.encode(MESSAGE_CODEC.decode(value)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("error while reading message:\n{}", e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * codec which writes values in configured format and reads values in all formats
+     * @param jsonCodec {@link Codec} json codec
+     * @param binaryCodec {@link Codec} binary codec
+     * @param <T> type of object
+     * @return {@link Codec}
+     */
+    private <T> Codec<T> codec(Codec<T> jsonCodec, Codec<T> binaryCodec) {
+        return CODEC_BINARY.equals(REDIS_VALUE_CODEC_PROPERTY)
+                ? new FormatDetectingCodec<>(binaryCodec, jsonCodec)
+                : new FormatDetectingCodec<>(jsonCodec, binaryCodec);
+    }
+
+    /**
+     * create group, the owner becomes a member
+     * @param group {@link Group} created group
+     * @param owner {@link User} creator of group
+     * @param members {@link Collection<User>} other members
+     * @throws RedisMessengerException when group exists or is incorrect
+     */
+    public void createGroup(Group group, User owner, Collection<User> members) throws RedisMessengerException {
+        if (group.getName() == null)
+            throw new RedisMessengerException("group name must be filled");
+        String groupKey = groupKey(group.getName());
+        group.setOwnerKey(userKey(owner));
+        group.setDateCreate(Calendar.getInstance().getTime());
+        byte[] groupValue;
+        try {
+            groupValue = GROUP_CODEC.encode(group);
+        } catch (IOException e) {
+            log.error("error while creating group {}:\n{}", group, e.getLocalizedMessage());
+            throw new RedisMessengerException("group ".concat(groupKey).concat(" is incorrect"));
+        }
+        if (!JedisClient.getInstance().setValueIfAbsent(groupKey, groupValue))
+            throw new RedisMessengerException("group ".concat(groupKey).concat(" already exists"));
+        List<User> allMembers = new ArrayList<>(members);
+        allMembers.add(owner);
+        addGroupMembers(group, allMembers);
+    }
+
+    /**
+     * get group by name
+     * @param groupName {@link String} name of group
+     * @return {@link Group}
+     * @throws RedisMessengerException when group doesn't exist
+     */
+    public Group getGroup(String groupName) throws RedisMessengerException, IOException {
+        String groupKey = groupKey(groupName);
+        byte[] groupValue = JedisClient.getInstance().getBinaryValue(groupKey);
+        if (groupValue == null)
+            throw new RedisMessengerException("group ".concat(groupKey).concat(" doesn't exist"));
+        return GROUP_CODEC.decode(groupValue);
+    }
+
+    /**
+     * add members to group in batches of user.bulk.batch.size
+     * @param group {@link Group}
+     * @param members {@link Collection<User>} new members
+     * @return long count of added members
+     */
+    public long addGroupMembers(Group group, Collection<User> members) {
+        return changeGroupMembers(members, userKeys -> JedisClient.getInstance().putValues(groupMembersKey(group.getName()), userKeys));
+    }
+
+    /**
+     * remove members from group in batches of user.bulk.batch.size
+     * @param group {@link Group}
+     * @param members {@link Collection<User>} removed members
+     * @return long count of removed members
+     */
+    public long removeGroupMembers(Group group, Collection<User> members) {
+        return changeGroupMembers(members, userKeys -> JedisClient.getInstance().removeValues(groupMembersKey(group.getName()), userKeys));
+    }
+
+    /**
+     * apply change of members to batches of user keys
+     * @param members {@link Collection<User>} changed members
+     * @param change {@link Function} changes batch of members, returns count of changed members
+     * @return long count of changed members
+     */
+    private long changeGroupMembers(Collection<User> members, Function<String[], Long> change) {
+        long countChangedMembers = 0;
+        List<String> batch = new ArrayList<>();
+        for (User member : members) {
+            batch.add(userKey(member));
+            if (batch.size() == USER_BULK_BATCH_SIZE_PROPERTY) {
+                countChangedMembers += change.apply(batch.toArray(new String[0]));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            countChangedMembers += change.apply(batch.toArray(new String[0]));
+        return countChangedMembers;
+    }
+
+    /**
+     * check membership, it costs O(1) for groups of any size
+     * @param group {@link Group}
+     * @param user {@link User}
+     * @return boolean true when user is member of group
+     */
+    public boolean isGroupMember(Group group, User user) {
+        return JedisClient.getInstance().isMember(groupMembersKey(group.getName()), userKey(user));
+    }
+
+    /**
+     * send {@link Message} to group
+     * message is stored once in shared history of group, it isn't copied to histories of members,
+     * so sending doesn't depend on size of group
+     * @param group {@link Group} target group
+     * @param message {@link Message} text and author, author must be member of group
+     * @return {@link Message} sent message
+     * @throws RedisMessengerException when author isn't member of group or {@link Message} is incorrect
+     */
+    public Message sendGroupMessage(Group group, Message message) throws RedisMessengerException {
+        if (message.getText() == null || message.getFrom() == null)
+            throw new RedisMessengerException("all fields must be filled");
+        message.setTo(null);
+        message.setDateCreate(Calendar.getInstance().getTime());
+        message.setId(UUID.randomUUID().toString());
+        byte[] messageValue;
+        try {
+            messageValue = MESSAGE_CODEC.encode(message);
+        } catch (IOException e) {
+            log.error("error while sending message {}:\n{}", message, e.getLocalizedMessage());
+            throw new RedisMessengerException("message is incorrect");
+        }
+        String userFromKey = userKey(message.getFrom());
+        Object delivered = JedisClient.getInstance().evalBinaryScript(LuaScript.SEND_GROUP_MESSAGE,
+                Arrays.asList(groupMembersKey(group.getName()), groupMessagesKey(group.getName())),
+                Arrays.asList(SafeEncoder.encode(userFromKey), SafeEncoder.encode(groupChatChannel(group.getName())), messageValue,
+                        SafeEncoder.encode(String.valueOf(message.getDateCreate().getTime()))));
+        if (delivered == null)
+            throw new RedisMessengerException("user with userKey ".concat(userFromKey).concat(" isn't member of group ").concat(group.getName()));
+        return message;
+    }
+
+    /**
+     * get page of group history from the newest message
+     * @param group {@link Group}
+     * @param member {@link User} reader, must be member of group
+     * @param cursor {@link String} from previous page, null for the first page
+     * @param limit int max size of page
+     * @return {@link MessagesPage}
+     * @throws RedisMessengerException when user isn't member of group, cursor or limit is incorrect
+     */
+    public MessagesPage getGroupMessages(Group group, User member, String cursor, int limit) throws RedisMessengerException {
+        checkGroupMember(group, member);
+        return messagesPage(groupMessagesKey(group.getName()), cursor, limit);
+    }
+
+    /**
+     * listen to chat of group without blocking
+     * @param group {@link Group}
+     * @param member {@link User} reader, must be member of group
+     * @param listener {@link Consumer<Message>} gets sent messages
+     * @return {@link SubscriptionManager.Subscription} for unsubscribe
+     * @throws RedisMessengerException when user isn't member of group
+     */
+    public SubscriptionManager.Subscription subscribeGroup(Group group, User member, Consumer<Message> listener) throws RedisMessengerException {
+        checkGroupMember(group, member);
+        return subscribeChannel(groupChatChannel(group.getName()), listener);
+    }
+
+    /**
+     * @param group {@link Group}
+     * @param user {@link User}
+     * @throws RedisMessengerException when user isn't member of group
+     */
+    private void checkGroupMember(Group group, User user) throws RedisMessengerException {
+        if (!isGroupMember(group, user))
+            throw new RedisMessengerException("user with userKey ".concat(userKey(user)).concat(" isn't member of group ").concat(group.getName()));
+    }
+
+    /**
+     * listen to chat of two users without blocking, messages are received over the shared subscription connection
      * @param userFrom {@link User}
      * @param userTo {@link User}
+     * @param listener {@link Consumer<Message>} gets sent messages
+     * @return {@link SubscriptionManager.Subscription} for unsubscribe
      */
-    public void subscribe(User userFrom, User userTo) {
-        String userFromKey = userKey(userFrom);
-        String userToKey = userKey(userTo);
+    public SubscriptionManager.Subscription subscribe(User userFrom, User userTo, Consumer<Message> listener) {
+        return subscribeChannel(conversationChatChannel(userKey(userFrom), userKey(userTo)), listener);
+    }
+
+    /**
+     * publisher of live messages of two users, messages are passed to subscribers on demand with bounded buffer
+     * @param userFrom {@link User}
+     * @param userTo {@link User}
+     * @return {@link Flow.Publisher<Message>}
+     */
+    public Flow.Publisher<Message> chatPublisher(User userFrom, User userTo) {
+        return new ChatPublisher(listener -> subscribe(userFrom, userTo, listener));
+    }
+
+    /**
+     * listen to channel, messages are decoded before they are passed to listener,
+     * users of normalized messages are replaced with stored users
+     * @param chatChannel {@link String} channel of chat
+     * @param listener {@link Consumer<Message>} gets sent messages
+     * @return {@link SubscriptionManager.Subscription} for unsubscribe
+     */
+    private SubscriptionManager.Subscription subscribeChannel(String chatChannel, Consumer<Message> listener) {
+        return SubscriptionManager.getInstance().subscribe(chatChannel,
+                (channel, value) -> {
+                    try {
+                        Message message = MESSAGE_CODEC.decode(value);
+                        listener.accept(REDIS_MESSAGE_NORMALIZED_PROPERTY ? resolveUsers(message) : message);
+                    } catch (IOException e) {
+                        log.error("error while reading message of channel {}:\n{}", channel, e.getLocalizedMessage());
+                    }
+                });
+    }
+
+    /**
+     * move messages older than retention period from redis to archive
+     * @return long count of archived messages, 0 when retention is disabled
+     */
+    public long archiveMessages() {
+        if (MESSAGE_RETENTION_DAYS_PROPERTY <= 0)
+            return 0;
+        return archiveMessages(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MESSAGE_RETENTION_DAYS_PROPERTY)));
+    }
 
-        String chatUserFromChannel = chatUserChannel(userFromKey);
-        String chatUserToChannel = chatUserChannel(userToKey);
-
-        String hashUserFromKey = hashUserKey(userFromKey);
-        String hashUserToKey = hashUserKey(userToKey);
-
-        String chatUsersFromToChannel = chatUsersChannel(userFromKey, userToKey);
-
-        String userFromToKey = JedisClient.getInstance().getHashValue(hashUserFromKey, chatUserToChannel);
-        if (userFromToKey != null)
-            JedisClient.getInstance().subscribe(userFromToKey);
-        else {
-            String userToFromKey = JedisClient.getInstance().getHashValue(hashUserToKey, chatUserFromChannel);
-            if (userToFromKey != null)
-                JedisClient.getInstance().subscribe(userToFromKey);
-            else {
-                JedisClient.getInstance().createHashValue(hashUserFromKey, chatUserToChannel, chatUsersFromToChannel);
-                JedisClient.getInstance().createHashValue(hashUserToKey, chatUserFromChannel, chatUsersFromToChannel);
-                JedisClient.getInstance().subscribe(chatUsersFromToChannel);
+    /**
+     * move messages sent before date from redis to archive
+     * histories are found by SCAN and moved in segments of message.archive.segment.size messages,
+     * a segment is removed from redis only after it is written to archive
+     * @param before {@link Date} messages sent before it are archived
+     * @return long count of archived messages
+     */
+    public long archiveMessages(Date before) {
+        long countArchivedMessages = 0;
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> messagesKeys = JedisClient.getInstance().scanKeys(REDIS_KEY_MESSAGES_PREFIX_PROPERTY.concat(":*"), cursor);
+            for (String messagesKey : messagesKeys.getResult())
+                if (TYPE_SORTED_SET.equals(JedisClient.getInstance().getType(messagesKey)))
+                    countArchivedMessages += archiveHistory(messagesKey, before.getTime());
+            cursor = messagesKeys.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        log.info("archived {} messages sent before {}", countArchivedMessages, before);
+        return countArchivedMessages;
+    }
+
+    /**
+     * move old messages of one history to archive
+     * @param messagesKey {@link String} history of conversation or group
+     * @param beforeMillis long messages sent before this time are archived
+     * @return long count of archived messages
+     */
+    private long archiveHistory(String messagesKey, long beforeMillis) {
+        long countArchivedMessages = 0;
+        while (true) {
+            Set<Tuple> values = JedisClient.getInstance().getSortedBinaryValuesBefore(messagesKey, beforeMillis, MESSAGE_ARCHIVE_SEGMENT_SIZE_PROPERTY);
+            if (values.isEmpty())
+                return countArchivedMessages;
+            try {
+                MessageArchive.getInstance().append(messagesKey, values);
+            } catch (IOException e) {
+                log.error("error while archiving messages of {}:\n{}", messagesKey, e.getLocalizedMessage());
+                return countArchivedMessages;
             }
+            JedisClient.getInstance().removeSortedBinaryValues(messagesKey, values.stream().map(Tuple::getBinaryElement).toArray(byte[][]::new));
+            countArchivedMessages += values.size();
         }
     }
 
+    /**
+     * move conversations indexed by hash keys to canonical keys and convert unordered histories to ordered ones
+     * redis is never blocked: keys, hash fields and messages are iterated by SCAN/HSCAN/SSCAN in small batches
+     * @return long count of migrated conversations
+     */
+    public long migrateConversations() {
+        String hashKeyPrefix = REDIS_HASH_PREFIX_PROPERTY.concat(":");
+        long countMigratedConversations = 0;
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> hashKeys = JedisClient.getInstance().scanKeys(hashKeyPrefix.concat("*"), cursor);
+            for (String hashKey : hashKeys.getResult())
+                countMigratedConversations += migrateHash(hashKey, hashKey.substring(hashKeyPrefix.length()));
+            cursor = hashKeys.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        do {
+            ScanResult<String> messagesKeys = JedisClient.getInstance().scanKeys(REDIS_KEY_MESSAGES_PREFIX_PROPERTY.concat(":*"), cursor);
+            for (String messagesKey : messagesKeys.getResult())
+                if (convertToSortedSet(messagesKey) > 0)
+                    countMigratedConversations++;
+            cursor = messagesKeys.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        log.info("migrated {} conversations", countMigratedConversations);
+        return countMigratedConversations;
+    }
+
+    /**
+     * move conversations of one user to canonical keys and delete hash of user
+     * @param hashKey {@link String} hash of user
+     * @param userKey {@link String} user
+     * @return long count of migrated conversations
+     */
+    private long migrateHash(String hashKey, String userKey) {
+        String messagesFieldPrefix = REDIS_KEY_MESSAGES_PREFIX_PROPERTY.concat(":");
+        long countMigratedConversations = 0;
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<Map.Entry<String, String>> fields = JedisClient.getInstance().scanHash(hashKey, cursor);
+            for (Map.Entry<String, String> field : fields.getResult()) {
+                //chat fields point to channels, channels don't store anything
+                if (!field.getKey().startsWith(messagesFieldPrefix))
+                    continue;
+                String contactKey = field.getKey().substring(messagesFieldPrefix.length());
+                String messagesKey = conversationMessagesKey(userKey, contactKey);
+                //conversation is already stored by canonical key, it is only converted to ordered history below
+                if (field.getValue().equals(messagesKey))
+                    continue;
+                convertToSortedSet(messagesKey);
+                if (JedisClient.getInstance().moveValuesToSortedSet(field.getValue(), messagesKey, this::messageScore) > 0)
+                    countMigratedConversations++;
+            }
+            cursor = fields.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        JedisClient.getInstance().deleteValuesByKey(hashKey);
+        return countMigratedConversations;
+    }
+
+    /**
+     * call redis with history of conversation, unordered history written by previous versions is converted
+     * to ordered one by the first call, so old conversations work without command "migrate conversations"
+     * @param messagesKey {@link String} key of conversation
+     * @param call {@link Supplier} reads or writes history
+     * @param <T> type of reply
+     * @return reply of call
+     * @throws RedisMessengerException when history has unknown type and can't be converted
+     */
+    private <T> T withOrderedHistory(String messagesKey, Supplier<T> call) throws RedisMessengerException {
+        try {
+            return call.get();
+        } catch (JedisDataException e) {
+            if (!isWrongType(e))
+                throw e;
+        }
+        log.info("unordered history {} is converted to ordered history, {} messages", messagesKey, convertToSortedSet(messagesKey));
+        try {
+            return call.get();
+        } catch (JedisDataException e) {
+            if (!isWrongType(e))
+                throw e;
+            log.error("history {} of type {} isn't converted:\n{}", messagesKey, JedisClient.getInstance().getType(messagesKey), e.getLocalizedMessage());
+            throw new RedisMessengerException("history ".concat(messagesKey).concat(" is stored in unknown format"));
+        }
+    }
+
+    /**
+     * @param e {@link JedisDataException} error of redis or script
+     * @return boolean true when command was called for key of other type
+     */
+    private static boolean isWrongType(JedisDataException e) {
+        return e.getMessage() != null && e.getMessage().contains(ERROR_WRONG_TYPE);
+    }
+
+    /**
+     * convert unordered history to history ordered by time of messages
+     * @param messagesKey {@link String} key of conversation
+     * @return long count of converted messages, 0 when history is already ordered
+     */
+    private long convertToSortedSet(String messagesKey) {
+        if (!TYPE_SET.equals(JedisClient.getInstance().getType(messagesKey)))
+            return 0;
+        return JedisClient.getInstance().moveValuesToSortedSet(messagesKey, messagesKey, this::messageScore);
+    }
+
     /**
      * get keys of users
      * @return {@link Set<String>}
@@ -239,6 +1040,18 @@ public class RedisMessengerService {
         return String.join(":", REDIS_KEY_MESSAGES_PREFIX_PROPERTY, userFromKey, userToKey);
     }
 
+    /**
+     * canonical redis key of conversation, the same for both users
+     * @param userFromKey {@link String} current user
+     * @param userToKey {@link String} contact
+     * @return {@link String}
+     */
+    String conversationMessagesKey(String userFromKey, String userToKey) {
+        return userFromKey.compareTo(userToKey) <= 0
+                ? messagesUsersKey(userFromKey, userToKey)
+                : messagesUsersKey(userToKey, userFromKey);
+    }
+
     /**
      * redis key
      * @param userToKey {@link String} contact
@@ -276,6 +1089,18 @@ public class RedisMessengerService {
         return String.join(":", REDIS_CHANNEL_CHAT_PREFIX_PROPERTY, userFromKey, userToKey);
     }
 
+    /**
+     * canonical redis channel of conversation, the same for both users
+     * @param userFromKey {@link String} current user
+     * @param userToKey {@link String} contact
+     * @return {@link String}
+     */
+    String conversationChatChannel(String userFromKey, String userToKey) {
+        return userFromKey.compareTo(userToKey) <= 0
+                ? chatUsersChannel(userFromKey, userToKey)
+                : chatUsersChannel(userToKey, userFromKey);
+    }
+
     /**
      * redis key
      * @param userToKey {@link String} contact
@@ -285,4 +1110,40 @@ public class RedisMessengerService {
         return String.join(":", REDIS_CHANNEL_CHAT_PREFIX_PROPERTY, userToKey);
     }
 
+    /**
+     * redis key
+     * @param groupName {@link String} name of group
+     * @return {@link String}
+     */
+    String groupKey(String groupName) {
+        return String.join(":", REDIS_KEY_GROUP_PREFIX_PROPERTY, groupName);
+    }
+
+    /**
+     * redis key of members of group
+     * @param groupName {@link String} name of group
+     * @return {@link String}
+     */
+    String groupMembersKey(String groupName) {
+        return String.join(":", REDIS_KEY_GROUP_PREFIX_PROPERTY, groupName, GROUP_MEMBERS_SUFFIX);
+    }
+
+    /**
+     * redis key of shared history of group
+     * @param groupName {@link String} name of group
+     * @return {@link String}
+     */
+    String groupMessagesKey(String groupName) {
+        return String.join(":", REDIS_KEY_MESSAGES_PREFIX_PROPERTY, REDIS_KEY_GROUP_PREFIX_PROPERTY, groupName);
+    }
+
+    /**
+     * redis channel of group chat
+     * @param groupName {@link String} name of group
+     * @return {@link String}
+     */
+    String groupChatChannel(String groupName) {
+        return String.join(":", REDIS_CHANNEL_CHAT_PREFIX_PROPERTY, REDIS_KEY_GROUP_PREFIX_PROPERTY, groupName);
+    }
+
 }
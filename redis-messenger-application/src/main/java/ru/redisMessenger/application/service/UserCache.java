@@ -0,0 +1,197 @@
+package ru.redisMessenger.application.service;
+
+import lombok.extern.log4j.Log4j2;
+import redis.clients.util.SafeEncoder;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded cache of users of the whole process, the least recently used users are evicted
+ * every process listens to invalidation channel, users are invalidated in all processes when they are added or deleted,
+ * cache is bypassed and cleared while invalidations can be lost: before subscription and after loss of connection
+ */
+@Log4j2
+class UserCache {
+
+    private final int capacity;
+    private final String invalidationChannel;
+    private final Map<String, User> users;
+    //changed by every invalidation, value loaded before an invalidation isn't cached
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile SubscriptionManager.Subscription subscription;
+
+    /**
+     * default constructor
+     */
+    private UserCache() {
+        Configuration configuration = Configuration.getInstance();
+        capacity = Integer.parseInt(configuration.getProperty(Configuration.Property.USER_CACHE_CAPACITY.getPropertyName()));
+        invalidationChannel = configuration.getProperty(Configuration.Property.REDIS_CHANNEL_USER_INVALIDATION.getPropertyName());
+        users = Collections.synchronizedMap(new LeastRecentlyUsedMap(capacity));
+    }
+
+    private static volatile UserCache instance;
+
+    /**
+     * method for get instance of {@link UserCache}
+     * @return {@link UserCache}
+     */
+    static UserCache getInstance() {
+        UserCache result = instance;
+        if (result == null)
+            synchronized (UserCache.class) {
+                result = instance;
+                if (result == null)
+                    instance = result = new UserCache();
+            }
+        return result;
+    }
+
+    /**
+     * close instance if it was created
+     */
+    static void closeInstance() {
+        UserCache result = instance;
+        if (result != null)
+            result.close();
+    }
+
+    /**
+     * unsubscribe from invalidation channel and clear cache, the next lookup subscribes again
+     */
+    synchronized void close() {
+        if (subscription != null)
+            subscription.unsubscribe();
+        subscription = null;
+        invalidations.incrementAndGet();
+        users.clear();
+    }
+
+    /**
+     * get cached user or load it
+     * @param userKey {@link String} key of user
+     * @param loader {@link Loader} reads user from redis
+     * @return {@link User}
+     * @throws RedisMessengerException when user doesn't exist
+     * @throws IOException when user is incorrect
+     */
+    User get(String userKey, Loader loader) throws RedisMessengerException, IOException {
+        boolean consistent = subscribed();
+        if (consistent) {
+            User user = users.get(userKey);
+            if (user != null) {
+                log.debug("user {} is found in cache", userKey);
+                return user;
+            }
+        }
+        long invalidationsBeforeLoad = invalidations.get();
+        User user = loader.load(userKey);
+        if (consistent && invalidations.get() == invalidationsBeforeLoad)
+            users.put(userKey, user);
+        return user;
+    }
+
+    /**
+     * invalidate user in this process and in all other processes
+     * @param userKey {@link String} key of changed user
+     */
+    void publishInvalidation(String userKey) {
+        invalidate(userKey);
+        JedisClient.getInstance().publish(invalidationChannel, userKey);
+    }
+
+    /**
+     * @return int count of cached users
+     */
+    int size() {
+        return users.size();
+    }
+
+    /**
+     * remove user from cache
+     * @param userKey {@link String} key of changed user
+     */
+    private void invalidate(String userKey) {
+        invalidations.incrementAndGet();
+        users.remove(userKey);
+        log.debug("user {} is invalidated", userKey);
+    }
+
+    /**
+     * subscribe to invalidation channel when subscription is lost
+     * @return boolean true when cached users are consistent
+     */
+    private boolean subscribed() {
+        SubscriptionManager.Subscription currentSubscription = subscription;
+        if (currentSubscription != null && currentSubscription.isActive())
+            return true;
+        synchronized (this) {
+            if (subscription != null && subscription.isActive())
+                return true;
+            if (subscription != null)
+                subscription.unsubscribe();
+            invalidations.incrementAndGet();
+            users.clear();
+            try {
+                subscription = SubscriptionManager.getInstance().subscribe(invalidationChannel,
+                        (channel, userKey) -> invalidate(SafeEncoder.encode(userKey)));
+                return true;
+            } catch (RuntimeException e) {
+                log.error("users aren't cached, invalidation channel isn't subscribed:\n{}", e.getLocalizedMessage());
+                subscription = null;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * users in order of access, the least recently used user is evicted when capacity is exceeded
+     */
+    private static class LeastRecentlyUsedMap extends LinkedHashMap<String, User> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        /**
+         * default constructor
+         * @param capacity int max count of users
+         */
+        private LeastRecentlyUsedMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+            return size() > capacity;
+        }
+
+    }
+
+    /**
+     * reads user from redis
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        /**
+         * @param userKey {@link String} key of user
+         * @return {@link User}
+         * @throws RedisMessengerException when user doesn't exist
+         * @throws IOException when user is incorrect
+         */
+        User load(String userKey) throws RedisMessengerException, IOException;
+
+    }
+
+}
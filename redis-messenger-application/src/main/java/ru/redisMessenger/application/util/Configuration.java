@@ -4,6 +4,8 @@ import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 /**
@@ -14,6 +16,7 @@ public class Configuration {
 
     private Properties properties;
     private static final String PROPERTIES_FILE_NAME = "config.properties";
+    private static final String DATA_DIRECTORY_NAME = ".redis-messenger";
 
     /**
      * private constructor
@@ -44,21 +47,53 @@ public class Configuration {
 
 
     /**
-     * get property
+     * get property, system property with the same name overrides config.properties
      * @param propertyName {@link String} name of property
      * @return {@link String} value of property
      */
     public String getProperty(String propertyName){
+        String systemProperty = System.getProperty(propertyName);
+        if (systemProperty != null)
+            return systemProperty;
         return properties.get(propertyName).toString();
     }
 
+    /**
+     * get path property, relative path is resolved in .redis-messenger directory in home of user,
+     * so files of process don't depend on its working directory
+     * @param propertyName {@link String} name of property
+     * @return {@link Path} absolute path
+     */
+    public Path getPath(String propertyName){
+        Path path = Paths.get(getProperty(propertyName));
+        return path.isAbsolute() ? path : Paths.get(System.getProperty("user.home"), DATA_DIRECTORY_NAME).resolve(path);
+    }
+
     /**
      * enum with properties
      */
     public enum Property{
         REDIS_HOST("redis.host"), REDIS_PORT("redis.port"), FILE_OUTPUT_DIRECTORY("file.output.directory"), REDIS_KEY_USERS("redis.key.users"),
         REDIS_KEY_MESSAGES_PREFIX("redis.key.messages.prefix"), REDIS_KEY_USER_PREFIX("redis.key.user.prefix"), REDIS_CHANNEL_CHAT_PREFIX("redis.channel.chat.prefix"),
-        REDIS_HASH_PREFIX("redis.hash.prefix");
+        REDIS_HASH_PREFIX("redis.hash.prefix"), REDIS_TIMEOUT_MILLIS("redis.timeout.millis"), REDIS_POOL_MAX_TOTAL("redis.pool.max.total"),
+        REDIS_POOL_MAX_IDLE("redis.pool.max.idle"), REDIS_POOL_MIN_IDLE("redis.pool.min.idle"), REDIS_POOL_MAX_WAIT_MILLIS("redis.pool.max.wait.millis"),
+        REDIS_SCAN_COUNT("redis.scan.count"), REDIS_VALUE_CODEC("redis.value.codec"), MESSAGES_PAGE_SIZE("messages.page.size"),
+        FILE_UPLOAD_CHUNK_SIZE("file.upload.chunk.size"), FILE_UPLOAD_GZIP("file.upload.gzip"),
+        REDIS_SUBSCRIPTION_THREADS("redis.subscription.threads"), REDIS_SUBSCRIPTION_QUEUE_CAPACITY("redis.subscription.queue.capacity"),
+        USER_CACHE_CAPACITY("user.cache.capacity"), REDIS_CHANNEL_USER_INVALIDATION("redis.channel.user.invalidation"),
+        USER_BULK_BATCH_SIZE("user.bulk.batch.size"), MESSAGE_BROADCAST_BATCH_SIZE("message.broadcast.batch.size"),
+        REDIS_KEY_GROUP_PREFIX("redis.key.group.prefix"), REDIS_MESSAGE_NORMALIZED("redis.message.normalized"),
+        MESSAGE_RETENTION_DAYS("message.retention.days"), MESSAGE_ARCHIVE_DIRECTORY("message.archive.directory"),
+        MESSAGE_ARCHIVE_SEGMENT_SIZE("message.archive.segment.size"), MESSAGE_ARCHIVE_INTERVAL_MINUTES("message.archive.interval.minutes"),
+        MESSAGE_ARCHIVE_JOB_ENABLED("message.archive.job.enabled"),
+        MESSAGE_OUTBOX_MODE("message.outbox.mode"), MESSAGE_OUTBOX_DIRECTORY("message.outbox.directory"),
+        MESSAGE_OUTBOX_BATCH_SIZE("message.outbox.batch.size"), MESSAGE_OUTBOX_RETRY_MILLIS("message.outbox.retry.millis"),
+        MESSAGE_OUTBOX_FSYNC_INTERVAL_MILLIS("message.outbox.fsync.interval.millis"),
+        REDIS_ASYNC_THREADS("redis.async.threads"), REDIS_ASYNC_QUEUE_CAPACITY("redis.async.queue.capacity"),
+        CHAT_PUBLISHER_BUFFER_SIZE("chat.publisher.buffer.size"), CHAT_PUBLISHER_OVERFLOW("chat.publisher.overflow"),
+        LOAD_USERS("load.users"), LOAD_SENDERS("load.senders"), LOAD_RATE("load.rate"), LOAD_DURATION_SECONDS("load.duration.seconds"),
+        LOAD_MIX_SEND("load.mix.send"), LOAD_MIX_READ("load.mix.read"), LOAD_MIX_SUBSCRIBE("load.mix.subscribe"),
+        METRICS_ENABLED("metrics.enabled"), METRICS_DUMP_INTERVAL_SECONDS("metrics.dump.interval.seconds");
 
         private String propertyName;
 
@@ -2,12 +2,22 @@ package ru.redisMessenger.application.util;
 
 import lombok.extern.log4j.Log4j2;
 
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * uploader
@@ -15,6 +25,8 @@ import java.util.Collection;
 @Log4j2
 public class FileUploader {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * upload
      * @param filePath {@link String} path to target file
@@ -28,4 +40,66 @@ public class FileUploader {
         return text.size();
     }
 
+    /**
+     * upload chunk by chunk, only one chunk is held in memory
+     * @param filePath {@link String} path to target file
+     * @param chunks {@link Iterator} of chunks of messages, next chunk is read when previous one is written
+     * @param gzip boolean compress file
+     * @return {@link UploadStatistics}
+     * @throws IOException when directory is incorrect
+     */
+    public UploadStatistics writeLines(String filePath, Iterator<? extends Collection<String>> chunks, boolean gzip) throws IOException {
+        Path file = Paths.get(filePath);
+        long start = System.currentTimeMillis();
+        long lines = 0;
+        CountingOutputStream fileStream;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            fileStream = new CountingOutputStream(Channels.newOutputStream(channel));
+            OutputStream stream = gzip ? new GZIPOutputStream(fileStream, BUFFER_SIZE) : fileStream;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                while (chunks.hasNext()) {
+                    for (String line : chunks.next()) {
+                        writer.write(line);
+                        writer.write(System.lineSeparator());
+                        lines++;
+                    }
+                    log.info("uploaded {} lines, {} bytes to {}", lines, fileStream.getCount(), filePath);
+                }
+            }
+        }
+        UploadStatistics statistics = new UploadStatistics(lines, fileStream.getCount(), System.currentTimeMillis() - start);
+        log.info("uploaded {} lines, {} bytes to {} in {} ms, {} bytes/sec", statistics.getLines(), statistics.getBytes(),
+                filePath, statistics.getElapsedMillis(), statistics.getBytesPerSecond());
+        return statistics;
+    }
+
+    /**
+     * counts bytes written to file
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+    }
+
 }
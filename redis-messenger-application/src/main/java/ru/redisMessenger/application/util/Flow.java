@@ -0,0 +1,77 @@
+package ru.redisMessenger.application.util;
+
+/**
+ * interfaces of reactive streams with the same methods and contracts as java.util.concurrent.Flow of java 9,
+ * the project is built for java 8, so they are declared here
+ */
+public final class Flow {
+
+    /**
+     * private constructor
+     */
+    private Flow() {
+    }
+
+    /**
+     * producer of items received by subscribers
+     * @param <T> type of item
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        /**
+         * add subscriber, it gets {@link Subscription} by {@link Subscriber#onSubscribe(Subscription)}
+         * @param subscriber {@link Subscriber}
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+
+    }
+
+    /**
+     * receiver of items, it gets items only when they are requested by {@link Subscription#request(long)}
+     * @param <T> type of item
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * @param subscription {@link Subscription} for request and cancel
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * @param item {@link T} next item
+         */
+        void onNext(T item);
+
+        /**
+         * subscription is failed, no more items
+         * @param throwable {@link Throwable} error
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * publisher has no more items
+         */
+        void onComplete();
+
+    }
+
+    /**
+     * link between publisher and subscriber
+     */
+    public interface Subscription {
+
+        /**
+         * add demand of subscriber
+         * @param n long count of items, positive
+         */
+        void request(long n);
+
+        /**
+         * stop receiving items
+         */
+        void cancel();
+
+    }
+
+}
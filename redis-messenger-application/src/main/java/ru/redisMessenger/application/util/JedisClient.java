@@ -2,43 +2,80 @@ package ru.redisMessenger.application.util;
 
 import lombok.extern.log4j.Log4j2;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
 
 /**
  * redis service
+ * all methods borrow a connection from the pool, so one instance is safe to use from many threads
  */
 @Log4j2
 public class JedisClient {
 
-    private Jedis jedis;
+    private JedisPool pool;
+    private int scanCount;
+    private final LongAdder roundTrips = new LongAdder();
+    private final Map<LuaScript, String> scriptShas = new ConcurrentHashMap<>();
+    private final Metrics metrics = Metrics.getInstance();
 
     /**
      * default constructor
      */
     private JedisClient(){
-        String redisHost = Configuration.getInstance().getProperty(Configuration.Property.REDIS_HOST.getPropertyName());
-        int redisPort = Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.REDIS_PORT.getPropertyName()));
+        Configuration configuration = Configuration.getInstance();
+        String redisHost = configuration.getProperty(Configuration.Property.REDIS_HOST.getPropertyName());
+        int redisPort = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_PORT.getPropertyName()));
+        int timeout = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_TIMEOUT_MILLIS.getPropertyName()));
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_POOL_MAX_TOTAL.getPropertyName())));
+        poolConfig.setMaxIdle(Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_POOL_MAX_IDLE.getPropertyName())));
+        poolConfig.setMinIdle(Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_POOL_MIN_IDLE.getPropertyName())));
+        poolConfig.setMaxWaitMillis(Long.parseLong(configuration.getProperty(Configuration.Property.REDIS_POOL_MAX_WAIT_MILLIS.getPropertyName())));
+        poolConfig.setBlockWhenExhausted(true);
+        scanCount = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_SCAN_COUNT.getPropertyName()));
         try {
-            jedis = new Jedis(redisHost, redisPort);
+            pool = new JedisPool(poolConfig, redisHost, redisPort, timeout);
         } catch (Exception e) {
             log.error(e.getLocalizedMessage());
         }
     }
 
-    private static JedisClient instance;
+    private static volatile JedisClient instance;
 
     /**
      * method for get instance of {@link JedisClient}
      * @return {@link JedisClient}
      */
     public static JedisClient getInstance(){
-        if (instance == null)
+        JedisClient result = instance;
+        if (result == null)
             synchronized (JedisClient.class){
-                instance = new JedisClient();
+                result = instance;
+                if (result == null)
+                    instance = result = new JedisClient();
             }
-         return instance;
+        return result;
     }
 
     /**
@@ -47,7 +84,7 @@ public class JedisClient {
      * @return {@link String} value
      */
     public String getValue(String key){
-        String value = jedis.get(key);
+        String value = execute("GET", jedis -> jedis.get(key));
         if (value == null)
             log.debug("KEY\nvalue for key {} doesn't exist", key);
         else
@@ -62,24 +99,68 @@ public class JedisClient {
      * @return {@link String} status
      */
     public String setValue(String key, String value){
-        String status = jedis.set(key, value);
+        String status = execute("SET", jedis -> jedis.set(key, value));
         log.debug("SET\nstatus of create value ({},{}) is {}", key, value, status);
         return status;
     }
 
+    /**
+     * get binary value by key
+     * @param key {@link String} for value
+     * @return byte[] value
+     */
+    public byte[] getBinaryValue(String key){
+        byte[] value = execute("GET", jedis -> jedis.get(SafeEncoder.encode(key)));
+        if (value == null)
+            log.debug("KEY\nvalue for key {} doesn't exist", key);
+        else
+            log.debug("KEY\nget binary value of {} bytes by key {}", value.length, key);
+        return value;
+    }
+
+    /**
+     * set binary value
+     * @param key {@link String} for value
+     * @param value byte[] for insert/update
+     * @return {@link String} status
+     */
+    public String setValue(String key, byte[] value){
+        String status = execute("SET", jedis -> jedis.set(SafeEncoder.encode(key), value));
+        log.debug("SET\nstatus of create binary value of {} bytes by key {} is {}", value.length, key, status);
+        return status;
+    }
+
+    /**
+     * set binary value only when key doesn't exist
+     * @param key {@link String} for value
+     * @param value byte[] for insert
+     * @return boolean true when value is set
+     */
+    public boolean setValueIfAbsent(String key, byte[] value){
+        Long countSetValues = execute("SETNX", jedis -> jedis.setnx(SafeEncoder.encode(key), value));
+        log.debug("SETNX\nvalue of key {} is set: {}", key, countSetValues);
+        return countSetValues == 1;
+    }
+
     /**
      * delete by pattern
+     * keys are found by SCAN and deleted by one DEL for each step, so server is blocked only for one small batch at once
      * @param pattern {@link String} for delete values
      * @return int countDeletedValues
      */
     public int deleteValuesByPattern(String pattern){
-        Set<String> keys = jedis.keys(pattern);
-        for (String key : keys) {
-            jedis.del(key);
-        }
-        int countDeletedValues = keys.size();
+        long countDeletedValues = 0;
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> keys = scanKeys(pattern, cursor);
+            if (!keys.getResult().isEmpty()) {
+                String[] batch = keys.getResult().toArray(new String[0]);
+                countDeletedValues += execute("DEL", jedis -> jedis.del(batch));
+            }
+            cursor = keys.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
         log.debug("DEL\ndeleted {} values by pattern {}", countDeletedValues, pattern);
-        return countDeletedValues;
+        return (int) countDeletedValues;
     }
 
     /**
@@ -88,19 +169,27 @@ public class JedisClient {
      * @return countDeletedValues {@link Long}
      */
     public Long deleteValuesByKey(String key){
-        Long countDeletedValues = jedis.del(key);
+        Long countDeletedValues = execute("DEL", jedis -> jedis.del(key));
         log.debug("DEL\ndeleted {} values by key {}", countDeletedValues, key);
         return countDeletedValues;
     }
 
     /**
      * get keys by pattern
+     * keys are found by SCAN, so server is not blocked like by KEYS
      * @param pattern {@link String} for search
      * @return {@link Set<String>} keys
      */
     public Set<String> getKeys(String pattern){
-        Set<String> keys = jedis.keys(pattern);
-        log.debug("KEYS\nfound {} keys by pattern {}:\n{}", keys.size(), pattern, keys);
+        //SCAN can return the same key more than once, set removes duplicates
+        Set<String> keys = new HashSet<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> foundKeys = scanKeys(pattern, cursor);
+            keys.addAll(foundKeys.getResult());
+            cursor = foundKeys.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        log.debug("SCAN\nfound {} keys by pattern {}:\n{}", keys.size(), pattern, keys);
         return  keys;
     }
 
@@ -110,7 +199,7 @@ public class JedisClient {
      * @return {@link Set<String>} values
      */
     public Set<String> getValues(String key){
-        Set<String> values = jedis.smembers(key);
+        Set<String> values = execute("SMEMBERS", jedis -> jedis.smembers(key));
         if (values == null)
             log.debug("SMEMBERS\nvalue for key {} doesn't exist");
         else
@@ -118,6 +207,17 @@ public class JedisClient {
         return values;
     }
 
+    /**
+     * get set of binary values
+     * @param key {@link String} for values
+     * @return {@link Set} of byte[] values
+     */
+    public Set<byte[]> getBinaryValues(String key){
+        Set<byte[]> values = execute("SMEMBERS", jedis -> jedis.smembers(SafeEncoder.encode(key)));
+        log.debug("SMEMBERS\nget {} binary values by key {}", values.size(), key);
+        return values;
+    }
+
     /**
      * put values
      * @param key {@link String} for values
@@ -125,11 +225,35 @@ public class JedisClient {
      * @return {@link Long} countInsertedValues
      */
     public Long putValues(String key, String[] values){
-        Long countInsertedValues = jedis.sadd(key, values);
+        Long countInsertedValues = execute("SADD", jedis -> jedis.sadd(key, values));
         log.debug("SADD\n{} values added to key {}", countInsertedValues, key);
         return  countInsertedValues;
     }
 
+    /**
+     * remove values from set
+     * @param key {@link String} for values
+     * @param values {@link String[]}
+     * @return {@link Long} countRemovedValues
+     */
+    public Long removeValues(String key, String[] values){
+        Long countRemovedValues = execute("SREM", jedis -> jedis.srem(key, values));
+        log.debug("SREM\n{} values removed from key {}", countRemovedValues, key);
+        return countRemovedValues;
+    }
+
+    /**
+     * check that set contains value
+     * @param key {@link String} of set
+     * @param value {@link String}
+     * @return boolean true when set contains value
+     */
+    public boolean isMember(String key, String value){
+        Boolean member = execute("SISMEMBER", jedis -> jedis.sismember(key, value));
+        log.debug("SISMEMBER\nkey {} contains {}: {}", key, value, member);
+        return member;
+    }
+
     /**
      * create hash value
      * @param key {@link String} hash name
@@ -137,7 +261,7 @@ public class JedisClient {
      * @param value {@link String} for create
      */
     public Long createHashValue(String key, String field, String value){
-        Long countInsertedValues = jedis.hset(key, field, value);
+        Long countInsertedValues = execute("HSET", jedis -> jedis.hset(key, field, value));
         log.debug("HSET\n{} values {} added to field {} of key {}", value, countInsertedValues, field, key);
         return countInsertedValues;
     }
@@ -149,7 +273,7 @@ public class JedisClient {
      * @return hashValue
      */
     public String getHashValue(String key, String field){
-        String hashValue = jedis.hget(key, field);
+        String hashValue = execute("HGET", jedis -> jedis.hget(key, field));
         log.debug("HGET\nget hash value {} added by field {} of key {}", hashValue, field, key);
         return hashValue;
     }
@@ -160,7 +284,7 @@ public class JedisClient {
      * @return {@link Set<String>}
      */
     public Set<String> getHashKeys(String key){
-        Set<String> keys = jedis.hkeys(key);
+        Set<String> keys = execute("HKEYS", jedis -> jedis.hkeys(key));
         log.debug("HKEYS\nfound {} keys:\n{}", keys.size(), keys);
         return keys;
     }
@@ -172,41 +296,321 @@ public class JedisClient {
      * @return countPublishedMessages
      */
     public Long publish(String channel, String message){
-        Long countPublishedMessages = jedis.publish(channel, message);
+        Long countPublishedMessages = execute("PUBLISH", jedis -> jedis.publish(channel, message));
         log.debug("PUBLISH\n{} messages published to channel {}", countPublishedMessages, channel);
         return countPublishedMessages;
     }
 
     /**
-     * subscribe to channel
-     * @param channel {@link String} for subscribe
+     * one step of incremental iteration over keys, doesn't block server like KEYS
+     * @param pattern {@link String} for search
+     * @param cursor {@link String} cursor returned by previous step, {@link ScanParams#SCAN_POINTER_START} for first step
+     * @return {@link ScanResult} found keys and cursor for next step
      */
-    public void subscribe(String channel){
-        jedis.subscribe(new Subscriber(), channel);
+    public ScanResult<String> scanKeys(String pattern, String cursor){
+        ScanParams params = new ScanParams().match(pattern).count(scanCount);
+        ScanResult<String> keys = execute("SCAN", jedis -> jedis.scan(cursor, params));
+        log.debug("SCAN\nfound {} keys by pattern {} from cursor {}", keys.getResult().size(), pattern, cursor);
+        return keys;
     }
 
-    private class Subscriber extends JedisPubSub {
+    /**
+     * one step of incremental iteration over hash fields
+     * @param key {@link String} hash name
+     * @param cursor {@link String} cursor returned by previous step, {@link ScanParams#SCAN_POINTER_START} for first step
+     * @return {@link ScanResult} found fields with values and cursor for next step
+     */
+    public ScanResult<Map.Entry<String, String>> scanHash(String key, String cursor){
+        ScanParams params = new ScanParams().count(scanCount);
+        ScanResult<Map.Entry<String, String>> fields = execute("HSCAN", jedis -> jedis.hscan(key, cursor, params));
+        log.debug("HSCAN\nfound {} fields of key {} from cursor {}", fields.getResult().size(), key, cursor);
+        return fields;
+    }
 
-        public void onMessage(String channel, String message) {
-            log.debug("SUBSCRIBE\nreceived a new message on channel {}:\n{}", channel, message);
-        }
+    /**
+     * move all values of set to sorted set in small batches, every batch is moved atomically
+     * values are moved as bytes, so any format of values is kept
+     * when source and target are the same key the set is converted to sorted set in place
+     * @param sourceKey {@link String} set
+     * @param targetKey {@link String} sorted set
+     * @param score {@link ToDoubleFunction} score of value
+     * @return long count of moved values
+     */
+    public long moveValuesToSortedSet(String sourceKey, String targetKey, ToDoubleFunction<byte[]> score){
+        boolean inPlace = sourceKey.equals(targetKey);
+        byte[] binarySourceKey = SafeEncoder.encode(sourceKey);
+        byte[] binaryTargetKey = SafeEncoder.encode(inPlace ? targetKey.concat(":converting") : targetKey);
+        ScanParams params = new ScanParams().count(scanCount);
+        long countMovedValues = 0;
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        do {
+            byte[] currentCursor = cursor;
+            ScanResult<byte[]> values = execute("SSCAN", jedis -> jedis.sscan(binarySourceKey, currentCursor, params));
+            byte[][] batch = values.getResult().toArray(new byte[0][]);
+            if (batch.length > 0) {
+                Map<byte[], Double> scoredBatch = new HashMap<>();
+                for (byte[] value : batch)
+                    scoredBatch.put(value, score.applyAsDouble(value));
+                transaction(transaction -> {
+                    transaction.zadd(binaryTargetKey, scoredBatch);
+                    transaction.srem(binarySourceKey, batch);
+                });
+                countMovedValues += batch.length;
+            }
+            cursor = values.getCursorAsBytes();
+        } while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+        //the last SREM deletes the emptied set, so converted values can take its key
+        if (inPlace && countMovedValues > 0)
+            execute("RENAME", jedis -> jedis.rename(binaryTargetKey, binarySourceKey));
+        log.debug("SSCAN\nmoved {} values from key {} to sorted set {}", countMovedValues, sourceKey, targetKey);
+        return countMovedValues;
+    }
 
-        public void onSubscribe(String channel, int subscribedChannels) {
-            log.debug("SUBSCRIBE\nsubscribe to channel {}", channel);
-        }
+    /**
+     * get all values of sorted set in order of score
+     * @param key {@link String} for values
+     * @return {@link Set} of byte[] values
+     */
+    public Set<byte[]> getSortedBinaryValues(String key){
+        Set<byte[]> values = execute("ZRANGE", jedis -> jedis.zrange(SafeEncoder.encode(key), 0, -1));
+        log.debug("ZRANGE\nget {} binary values by key {}", values.size(), key);
+        return values;
+    }
+
+    /**
+     * get page of values of sorted set in reverse order of score
+     * @param key {@link String} for values
+     * @param maxScore double the highest score of page, inclusive
+     * @param offset int count of skipped values with the highest scores
+     * @param count int size of page
+     * @return {@link Set<Tuple>} values with scores
+     */
+    public Set<Tuple> getSortedBinaryValues(String key, double maxScore, int offset, int count){
+        Set<Tuple> values = execute("ZREVRANGEBYSCORE", jedis -> jedis.zrevrangeByScoreWithScores(SafeEncoder.encode(key),
+                maxScore, Double.NEGATIVE_INFINITY, offset, count));
+        log.debug("ZREVRANGEBYSCORE\nget {} binary values by key {}", values.size(), key);
+        return values;
+    }
 
-        public void onUnsubscribe(String channel, int subscribedChannels) {
-            log.debug("SUBSCRIBE\nunsubscribe from channel {}", channel);
+    /**
+     * get the oldest values of sorted set in order of score
+     * @param key {@link String} for values
+     * @param maxScore long scores of values are lower, exclusive
+     * @param count int max count of values
+     * @return {@link Set<Tuple>} values with scores
+     */
+    public Set<Tuple> getSortedBinaryValuesBefore(String key, long maxScore, int count){
+        Set<Tuple> values = execute("ZRANGEBYSCORE", jedis -> jedis.zrangeByScoreWithScores(SafeEncoder.encode(key),
+                SafeEncoder.encode("-inf"), SafeEncoder.encode("(".concat(String.valueOf(maxScore))), 0, count));
+        log.debug("ZRANGEBYSCORE\nget {} binary values by key {}", values.size(), key);
+        return values;
+    }
+
+    /**
+     * remove values from sorted set
+     * @param key {@link String} for values
+     * @param values byte[][] removed values
+     * @return {@link Long} count of removed values
+     */
+    public Long removeSortedBinaryValues(String key, byte[][] values){
+        Long countRemovedValues = execute("ZREM", jedis -> jedis.zrem(SafeEncoder.encode(key), values));
+        log.debug("ZREM\nremoved {} values by key {}", countRemovedValues, key);
+        return countRemovedValues;
+    }
+
+    /**
+     * get type of value
+     * @param key {@link String} for value
+     * @return {@link String} type, none when key doesn't exist
+     */
+    public String getType(String key){
+        String type = execute("TYPE", jedis -> jedis.type(key));
+        log.debug("TYPE\ntype of key {} is {}", key, type);
+        return type;
+    }
+
+    /**
+     * send all commands in one pipeline, one round trip
+     * @param commands {@link Consumer<Pipeline>} fills pipeline with commands
+     * @return {@link List<Object>} replies in order of commands
+     */
+    public List<Object> pipelined(Consumer<Pipeline> commands){
+        List<Object> replies = execute("PIPELINE", jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            return pipeline.syncAndReturnAll();
+        });
+        log.debug("PIPELINE\nget replies {}", replies);
+        return replies;
+    }
+
+    /**
+     * send all commands in one pipeline wrapped in MULTI/EXEC, one round trip
+     * @param commands {@link Consumer<Pipeline>} fills transaction with commands
+     * @return {@link List<Object>} replies in order of commands, null when transaction is discarded
+     */
+    public List<Object> transaction(Consumer<Pipeline> commands){
+        List<Object> replies = execute("MULTI", jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.multi();
+            commands.accept(pipeline);
+            Response<List<Object>> exec = pipeline.exec();
+            pipeline.sync();
+            return exec.get();
+        });
+        log.debug("MULTI\nget replies {}", replies);
+        return replies;
+    }
+
+    /**
+     * execute lua script by EVALSHA, script is loaded to server once
+     * @param script {@link LuaScript}
+     * @param keys {@link List<String>} keys used by script
+     * @param args {@link List<String>} arguments of script
+     * @return reply of script
+     */
+    public Object evalScript(LuaScript script, List<String> keys, List<String> args){
+        Object reply = evalSha(script, sha -> execute("EVALSHA", jedis -> jedis.evalsha(sha, keys, args)));
+        log.debug("EVALSHA\nscript {} with keys {} and args {} returned {}", script, keys, args, reply);
+        return reply;
+    }
+
+    /**
+     * execute lua script with binary arguments by EVALSHA, script is loaded to server once
+     * @param script {@link LuaScript}
+     * @param keys {@link List<String>} keys used by script
+     * @param args {@link List} of byte[] arguments of script
+     * @return reply of script
+     */
+    public Object evalBinaryScript(LuaScript script, List<String> keys, List<byte[]> args){
+        List<byte[]> binaryKeys = keys.stream().map(SafeEncoder::encode).collect(Collectors.toList());
+        Object reply = evalSha(script, sha -> execute("EVALSHA", jedis -> jedis.evalsha(SafeEncoder.encode(sha), binaryKeys, args)));
+        log.debug("EVALSHA\nscript {} with keys {} and {} binary args returned {}", script, keys, args.size(), reply);
+        return reply;
+    }
+
+    /**
+     * execute lua script many times in one pipeline by EVALSHA, script is loaded to server once
+     * @param script {@link LuaScript}
+     * @param keys {@link List} of keys used by every call of script
+     * @param args {@link List} of byte[] arguments of every call of script
+     * @return {@link List<Object>} replies of calls in order of calls, failed calls are replied by exceptions
+     */
+    public List<Object> evalBinaryScripts(LuaScript script, List<List<String>> keys, List<List<byte[]>> args){
+        List<Object> replies = evalShaPipelined(scriptShas.computeIfAbsent(script, this::loadScript), keys, args);
+        List<Integer> unknownScriptCalls = new ArrayList<>();
+        for (int i = 0; i < replies.size(); i++)
+            if (replies.get(i) instanceof JedisNoScriptException)
+                unknownScriptCalls.add(i);
+        if (!unknownScriptCalls.isEmpty()) {
+            //script cache was flushed or server was restarted, only calls which weren't executed are repeated
+            String reloadedSha = loadScript(script);
+            scriptShas.put(script, reloadedSha);
+            List<Object> repeatedReplies = evalShaPipelined(reloadedSha,
+                    unknownScriptCalls.stream().map(keys::get).collect(Collectors.toList()),
+                    unknownScriptCalls.stream().map(args::get).collect(Collectors.toList()));
+            for (int i = 0; i < unknownScriptCalls.size(); i++)
+                replies.set(unknownScriptCalls.get(i), repeatedReplies.get(i));
         }
+        log.debug("EVALSHA\nscript {} called {} times in pipeline", script, replies.size());
+        return replies;
+    }
+
+    /**
+     * call script by sha many times in one pipeline
+     * @param sha {@link String} sha1 of script
+     * @param keys {@link List} of keys used by every call of script
+     * @param args {@link List} of byte[] arguments of every call of script
+     * @return {@link List<Object>} replies of calls
+     */
+    private List<Object> evalShaPipelined(String sha, List<List<String>> keys, List<List<byte[]>> args){
+        byte[] binarySha = SafeEncoder.encode(sha);
+        return new ArrayList<>(pipelined(pipeline -> {
+            for (int i = 0; i < keys.size(); i++) {
+                List<byte[]> binaryKeys = keys.get(i).stream().map(SafeEncoder::encode).collect(Collectors.toList());
+                pipeline.evalsha(binarySha, binaryKeys, args.get(i));
+            }
+        }));
+    }
 
-        public void onPSubscribe(String pattern, int subscribedChannels) {
+    /**
+     * call script by sha, reload script when server doesn't know it
+     * @param script {@link LuaScript}
+     * @param call {@link Function} call of script by sha
+     * @return reply of script
+     */
+    private Object evalSha(LuaScript script, Function<String, Object> call){
+        String sha = scriptShas.computeIfAbsent(script, this::loadScript);
+        try {
+            return call.apply(sha);
+        } catch (JedisNoScriptException e) {
+            //script cache was flushed or server was restarted
+            String reloadedSha = loadScript(script);
+            scriptShas.put(script, reloadedSha);
+            return call.apply(reloadedSha);
         }
+    }
 
-        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+    /**
+     * load lua script to server
+     * @param script {@link LuaScript}
+     * @return {@link String} sha1 of script
+     */
+    private String loadScript(LuaScript script){
+        String sha = execute("SCRIPT LOAD", jedis -> jedis.scriptLoad(script.getSource()));
+        log.debug("SCRIPT LOAD\nscript {} loaded with sha {}", script, sha);
+        return sha;
+    }
+
+    /**
+     * count of round trips to redis since start
+     * @return long
+     */
+    public long getRoundTrips(){
+        return roundTrips.sum();
+    }
+
+    /**
+     * execute command on connection borrowed from pool, latency is recorded to {@link Metrics} of command
+     * @param commandName {@link String} name of command in metrics
+     * @param command {@link Function} command
+     * @param <T> type of reply
+     * @return reply
+     */
+    private <T> T execute(String commandName, Function<Jedis, T> command){
+        OperationMetrics commandMetrics = metrics.redisCommand(commandName);
+        long start = System.nanoTime();
+        try (Jedis jedis = pool.getResource()) {
+            T reply = command.apply(jedis);
+            roundTrips.increment();
+            return reply;
+        } catch (RuntimeException e) {
+            commandMetrics.recordError();
+            throw e;
+        } finally {
+            commandMetrics.record(System.nanoTime() - start);
         }
+    }
 
-        public void onPMessage(String pattern, String channel,
-                               String message) {
+    /**
+     * close instance if it was created
+     */
+    public static void closeInstance(){
+        JedisClient result = instance;
+        if (result != null)
+            result.close();
+    }
+
+    /**
+     * close all pooled connections, the next {@link #getInstance()} connects again with current configuration
+     */
+    public void close(){
+        pool.close();
+        synchronized (JedisClient.class) {
+            if (instance == this)
+                instance = null;
         }
+        log.debug("POOL\nconnection pool closed");
     }
+
 }
@@ -0,0 +1,103 @@
+package ru.redisMessenger.application.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * histogram of latencies in nanoseconds with relative error below 1%, like HdrHistogram with two significant digits
+ * values below 128 are counted exactly, every higher power of two is split into 128 linear buckets,
+ * so the whole range of long fits into (64 - 7 + 1) * 128 = 7424 counters, recording is lock-free and one histogram is shared by all threads
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record one latency
+     * @param nanos long latency, negative value is recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        //max is written only when it grows, so threads don't contend on it in steady state
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value))
+            currentMax = max.get();
+    }
+
+    /**
+     * @return long count of recorded latencies
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return long the highest recorded latency, exact
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return double mean of recorded latencies, 0 when histogram is empty
+     */
+    public double getMean() {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+    }
+
+    /**
+     * get latency at percentile, it is the highest value of bucket, so it isn't lower than real latency by more than 1%
+     * @param percentile double from 0 to 100, e.g. 99.9
+     * @return long latency, 0 when histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long currentCount = count.sum();
+        if (currentCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * currentCount));
+        long counted = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            counted += counts.get(i);
+            if (counted >= rank)
+                return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * @param value long latency, not negative
+     * @return int index of bucket
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index int index of bucket
+     * @return long the highest value counted by bucket
+     */
+    private static long highestValue(int index) {
+        int bucket = index / SUB_BUCKETS;
+        long subBucket = index % SUB_BUCKETS;
+        if (bucket == 0)
+            return subBucket;
+        long highest = ((SUB_BUCKETS + subBucket + 1) << (bucket - 1)) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+}
@@ -0,0 +1,60 @@
+package ru.redisMessenger.application.util;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+/**
+ * lua scripts executed on redis server
+ */
+@Log4j2
+public enum LuaScript {
+
+    SEND_MESSAGE("lua/send_message.lua"), SEND_GROUP_MESSAGE("lua/send_group_message.lua");
+
+    private String fileName;
+    private volatile String source;
+
+    /**
+     * default constructor
+     * @param fileName {@link String} script in classpath
+     */
+    LuaScript(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * get source of script, it is read from classpath only once
+     * @return {@link String} source
+     */
+    public String getSource() {
+        if (source == null)
+            synchronized (this) {
+                if (source == null)
+                    source = readSource();
+            }
+        return source;
+    }
+
+    /**
+     * read script from classpath
+     * @return {@link String} source
+     */
+    private String readSource() {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(fileName);
+        if (inputStream == null)
+            throw new IllegalStateException("script ".concat(fileName).concat(" not found"));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        } catch (IOException e) {
+            log.error(e.getLocalizedMessage());
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package ru.redisMessenger.application.util;
+
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Tuple;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * cold archive of sorted sets on local disk
+ * every key has own directory with append-only gzip segment files and small text index,
+ * a line of index describes one segment: file name, the lowest score, the highest score and count of values,
+ * so a page is read only from segments with suitable scores
+ * values which are already archived are skipped by append, so a segment written again after a failure doesn't repeat them
+ * archive is changed under exclusive lock of file in archive directory, so processes with the same message.archive.directory
+ * don't write the same segment, a segment file is never replaced: its name is taken by creating a new file
+ */
+@Log4j2
+public class MessageArchive {
+
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String LOCK_FILE_NAME = "archive.lock";
+    private static final String SEGMENT_FILE_FORMAT = "%08d.seg.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+
+    /**
+     * default constructor
+     */
+    private MessageArchive(){
+        directory = Configuration.getInstance().getPath(Configuration.Property.MESSAGE_ARCHIVE_DIRECTORY.getPropertyName());
+    }
+
+    private static volatile MessageArchive instance;
+
+    /**
+     * method for get instance of {@link MessageArchive}
+     * @return {@link MessageArchive}
+     */
+    public static MessageArchive getInstance(){
+        MessageArchive result = instance;
+        if (result == null)
+            synchronized (MessageArchive.class){
+                result = instance;
+                if (result == null)
+                    instance = result = new MessageArchive();
+            }
+        return result;
+    }
+
+    /**
+     * write values to new segment of key, the segment is added to index after it is completely written
+     * values with the same score and element as archived ones are skipped
+     * @param key {@link String} archived sorted set
+     * @param archivedValues {@link Collection<Tuple>} values with scores
+     * @throws IOException when segment isn't written
+     */
+    public synchronized void append(String key, Collection<Tuple> archivedValues) throws IOException {
+        if (archivedValues.isEmpty())
+            return;
+        FileChannel lockChannel = lock();
+        try {
+            appendLocked(key, archivedValues);
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * write values to new segment of key, it is called under lock of archive
+     * @param key {@link String} archived sorted set
+     * @param archivedValues {@link Collection<Tuple>} values with scores
+     * @throws IOException when segment isn't written
+     */
+    private void appendLocked(String key, Collection<Tuple> archivedValues) throws IOException {
+        Path keyDirectory = Files.createDirectories(keyDirectory(key));
+        List<Segment> segments = readIndex(keyDirectory);
+        Collection<Tuple> values = withoutArchivedValues(keyDirectory, segments, archivedValues);
+        if (values.isEmpty()) {
+            log.debug("ARCHIVE\nall {} values of key {} are already archived", archivedValues.size(), key);
+            return;
+        }
+        Path segmentFile = createSegmentFile(keyDirectory, segments.size() + 1);
+        String segmentFileName = segmentFile.getFileName().toString();
+        Path temporaryFile = keyDirectory.resolve(segmentFileName.concat(".tmp"));
+        double minScore = Double.POSITIVE_INFINITY;
+        double maxScore = Double.NEGATIVE_INFINITY;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temporaryFile), BUFFER_SIZE), BUFFER_SIZE))) {
+            for (Tuple value : values) {
+                out.writeDouble(value.getScore());
+                out.writeInt(value.getBinaryElement().length);
+                out.write(value.getBinaryElement());
+                minScore = Math.min(minScore, value.getScore());
+                maxScore = Math.max(maxScore, value.getScore());
+            }
+        }
+        //replaces empty file taken by createSegmentFile
+        Files.move(temporaryFile, segmentFile, StandardCopyOption.ATOMIC_MOVE);
+        String indexLine = String.join(" ", segmentFileName, String.valueOf(minScore), String.valueOf(maxScore),
+                String.valueOf(values.size())).concat(System.lineSeparator());
+        Files.write(keyDirectory.resolve(INDEX_FILE_NAME), indexLine.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        log.debug("ARCHIVE\nwrote {} values of key {} to segment {}", values.size(), key, segmentFileName);
+    }
+
+    /**
+     * get page of archived values in reverse order of score, like ZREVRANGEBYSCORE
+     * @param key {@link String} archived sorted set
+     * @param maxScore double the highest score of page, inclusive
+     * @param offset int count of skipped values with score equal to maxScore
+     * @param count int size of page
+     * @return {@link List<Tuple>} values with scores, empty when key isn't archived
+     * @throws IOException when archive isn't readable
+     */
+    public synchronized List<Tuple> read(String key, double maxScore, int offset, int count) throws IOException {
+        Path keyDirectory = keyDirectory(key);
+        if (count <= 0 || !Files.isDirectory(keyDirectory))
+            return Collections.emptyList();
+        List<Segment> segments = readIndex(keyDirectory).stream()
+                .filter(segment -> segment.getMinScore() <= maxScore)
+                .sorted(Comparator.comparingDouble(Segment::getMaxScore).reversed())
+                .collect(Collectors.toList());
+        //the same order as ZREVRANGEBYSCORE: values with equal scores are in reverse lexicographical order
+        Comparator<Tuple> newestFirst = Comparator.comparingDouble(Tuple::getScore)
+                .thenComparing(Tuple::getBinaryElement, MessageArchive::compareBytes).reversed();
+        long needed = (long) offset + count;
+        List<Tuple> values = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            for (Tuple value : readSegment(keyDirectory.resolve(segments.get(i).getFileName())))
+                if (value.getScore() <= maxScore)
+                    values.add(value);
+            values.sort(newestFirst);
+            //segments are ordered by the highest score, the next one can't have values of the page
+            if (values.size() >= needed && (i + 1 == segments.size() || segments.get(i + 1).getMaxScore() < values.get((int) needed - 1).getScore()))
+                break;
+        }
+        int skipped = 0;
+        while (skipped < offset && skipped < values.size() && values.get(skipped).getScore() == maxScore)
+            skipped++;
+        List<Tuple> page = new ArrayList<>(values.subList(skipped, Math.min(values.size(), skipped + count)));
+        log.debug("ARCHIVE\nget {} values by key {}", page.size(), key);
+        return page;
+    }
+
+    /**
+     * get all archived values in order of score
+     * @param key {@link String} archived sorted set
+     * @return {@link List<Tuple>} values with scores, empty when key isn't archived
+     * @throws IOException when archive isn't readable
+     */
+    public List<Tuple> read(String key) throws IOException {
+        List<Tuple> values = read(key, Double.POSITIVE_INFINITY, 0, Integer.MAX_VALUE);
+        Collections.reverse(values);
+        return values;
+    }
+
+    /**
+     * delete all archived values of key
+     * @param key {@link String} archived sorted set
+     * @throws IOException when archive isn't deleted
+     */
+    public synchronized void delete(String key) throws IOException {
+        Path keyDirectory = keyDirectory(key);
+        if (!Files.isDirectory(keyDirectory))
+            return;
+        FileChannel lockChannel = lock();
+        try (Stream<Path> files = Files.list(keyDirectory)) {
+            for (Path file : files.collect(Collectors.toList()))
+                Files.delete(file);
+            Files.delete(keyDirectory);
+        } finally {
+            lockChannel.close();
+        }
+        log.debug("ARCHIVE\ndeleted archive of key {}", key);
+    }
+
+    /**
+     * wait for exclusive lock of archive, the lock is released when returned channel is closed
+     * methods of instance are synchronized, so the lock isn't taken twice by this process
+     * @return {@link FileChannel} locked file
+     * @throws IOException when lock isn't taken
+     */
+    private FileChannel lock() throws IOException {
+        FileChannel channel = FileChannel.open(Files.createDirectories(directory).resolve(LOCK_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.lock();
+            log.debug("ARCHIVE\narchive {} is locked by {}", directory, lock);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * take name of new segment by creating empty file, names of existing files are skipped,
+     * so a segment left without index line by failed run isn't replaced
+     * @param keyDirectory {@link Path} directory of key
+     * @param number int the first number to try
+     * @return {@link Path} created empty file of segment
+     * @throws IOException when file isn't created
+     */
+    private static Path createSegmentFile(Path keyDirectory, int number) throws IOException {
+        while (true) {
+            try {
+                return Files.createFile(keyDirectory.resolve(String.format(SEGMENT_FILE_FORMAT, number)));
+            } catch (FileAlreadyExistsException e) {
+                number++;
+            }
+        }
+    }
+
+    /**
+     * remove values which are stored in segments, only segments with overlapping scores are read,
+     * usually there are none, because values are archived from the oldest
+     * @param keyDirectory {@link Path} directory of key
+     * @param segments {@link List<Segment>} index of key
+     * @param values {@link Collection<Tuple>} values with scores
+     * @return {@link Collection<Tuple>} values which aren't archived
+     * @throws IOException when segment isn't readable
+     */
+    private Collection<Tuple> withoutArchivedValues(Path keyDirectory, List<Segment> segments, Collection<Tuple> values) throws IOException {
+        double minScore = values.stream().mapToDouble(Tuple::getScore).min().orElse(Double.POSITIVE_INFINITY);
+        double maxScore = values.stream().mapToDouble(Tuple::getScore).max().orElse(Double.NEGATIVE_INFINITY);
+        Set<String> archived = new HashSet<>();
+        for (Segment segment : segments)
+            if (segment.getMinScore() <= maxScore && segment.getMaxScore() >= minScore)
+                for (Tuple value : readSegment(keyDirectory.resolve(segment.getFileName())))
+                    archived.add(valueKey(value));
+        if (archived.isEmpty())
+            return values;
+        return values.stream().filter(value -> !archived.contains(valueKey(value))).collect(Collectors.toList());
+    }
+
+    /**
+     * @param value {@link Tuple} value with score
+     * @return {@link String} score and element, bytes of element are kept as is
+     */
+    private static String valueKey(Tuple value) {
+        return String.valueOf(value.getScore()).concat(" ").concat(new String(value.getBinaryElement(), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * compare values like redis compares members of sorted set
+     * @param first byte[] value
+     * @param second byte[] value
+     * @return int result of unsigned lexicographical comparison
+     */
+    private static int compareBytes(byte[] first, byte[] second) {
+        for (int i = 0; i < Math.min(first.length, second.length); i++) {
+            int result = Integer.compare(first[i] & 0xFF, second[i] & 0xFF);
+            if (result != 0)
+                return result;
+        }
+        return Integer.compare(first.length, second.length);
+    }
+
+    /**
+     * @param key {@link String} archived sorted set
+     * @return {@link Path} directory of key, key is encoded to be a valid file name
+     */
+    private Path keyDirectory(String key) {
+        try {
+            return directory.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8.name()));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * read index of key, incomplete lines are skipped
+     * @param keyDirectory {@link Path} directory of key
+     * @return {@link List<Segment>}
+     * @throws IOException when index isn't readable
+     */
+    private List<Segment> readIndex(Path keyDirectory) throws IOException {
+        Path index = keyDirectory.resolve(INDEX_FILE_NAME);
+        List<Segment> segments = new ArrayList<>();
+        if (!Files.exists(index))
+            return segments;
+        for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ");
+            try {
+                segments.add(new Segment(parts[0], Double.parseDouble(parts[1]), Double.parseDouble(parts[2])));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.warn("incorrect line of archive index {}: {}", index, line);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * @param segmentFile {@link Path} gzip segment
+     * @return {@link List<Tuple>} all values of segment
+     * @throws IOException when segment isn't readable
+     */
+    private List<Tuple> readSegment(Path segmentFile) throws IOException {
+        List<Tuple> values = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(segmentFile), BUFFER_SIZE), BUFFER_SIZE))) {
+            while (true) {
+                double score;
+                try {
+                    score = in.readDouble();
+                } catch (EOFException e) {
+                    return values;
+                }
+                byte[] element = new byte[in.readInt()];
+                in.readFully(element);
+                values.add(new Tuple(element, score));
+            }
+        }
+    }
+
+    /**
+     * line of index
+     */
+    private static class Segment {
+
+        private final String fileName;
+        private final double minScore;
+        private final double maxScore;
+
+        /**
+         * default constructor
+         * @param fileName {@link String} segment file
+         * @param minScore double the lowest score of segment
+         * @param maxScore double the highest score of segment
+         */
+        private Segment(String fileName, double minScore, double maxScore) {
+            this.fileName = fileName;
+            this.minScore = minScore;
+            this.maxScore = maxScore;
+        }
+
+        private String getFileName() {
+            return fileName;
+        }
+
+        private double getMinScore() {
+            return minScore;
+        }
+
+        private double getMaxScore() {
+            return maxScore;
+        }
+
+    }
+
+}
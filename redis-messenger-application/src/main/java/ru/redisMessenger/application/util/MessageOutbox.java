@@ -0,0 +1,464 @@
+package ru.redisMessenger.application.util;
+
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * durable outbox of script calls on local disk
+ * calls are appended to one file and replayed to redis in order of appending by background thread,
+ * in pipelined batches of message.outbox.batch.size, while redis is unavailable replay is retried every message.outbox.retry.millis
+ * position of the first call which isn't replayed is kept in offset file, it is written after every replayed batch,
+ * so a batch can be replayed again after crash: replayed scripts must be idempotent,
+ * e.g. sent message carries its id, so the replayed message is the same member of history
+ * the file is synced to disk on every call or every message.outbox.fsync.interval.millis
+ * the file is locked while outbox is open, so processes with the same message.outbox.directory don't replay the same calls
+ */
+@Log4j2
+public class MessageOutbox {
+
+    private static final String OUTBOX_FILE_NAME = "outbox";
+    private static final String OFFSET_FILE_NAME = "outbox.offset";
+    //record: length of payload, crc32 of payload, payload
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final Path outboxFile;
+    private final Path offsetFile;
+    private final FileChannel channel;
+    //referenced while outbox is open, jvm forgets lock which isn't referenced and gives it to another channel of this process
+    private final FileLock lock;
+    private final int batchSize;
+    private final long retryMillis;
+    private final long fsyncIntervalMillis;
+    private final Thread drainerThread;
+    private final Object drainLock = new Object();
+
+    private long offset;
+    private long end;
+    private int pendingCalls;
+    private boolean dirty;
+    private volatile boolean closed;
+
+    /**
+     * default constructor, calls left by previous process are replayed by background thread
+     * @throws IOException when outbox isn't readable or is used by another process
+     */
+    private MessageOutbox() throws IOException {
+        Configuration configuration = Configuration.getInstance();
+        Path directory = Files.createDirectories(configuration.getPath(Configuration.Property.MESSAGE_OUTBOX_DIRECTORY.getPropertyName()));
+        batchSize = Integer.parseInt(configuration.getProperty(Configuration.Property.MESSAGE_OUTBOX_BATCH_SIZE.getPropertyName()));
+        retryMillis = Long.parseLong(configuration.getProperty(Configuration.Property.MESSAGE_OUTBOX_RETRY_MILLIS.getPropertyName()));
+        fsyncIntervalMillis = Long.parseLong(configuration.getProperty(Configuration.Property.MESSAGE_OUTBOX_FSYNC_INTERVAL_MILLIS.getPropertyName()));
+        outboxFile = directory.resolve(OUTBOX_FILE_NAME);
+        offsetFile = directory.resolve(OFFSET_FILE_NAME);
+        channel = FileChannel.open(outboxFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //lock is released when channel is closed
+        lock = tryLock(channel);
+        if (lock == null) {
+            channel.close();
+            throw new IOException("outbox ".concat(outboxFile.toString()).concat(" is used by another process"));
+        }
+        offset = Files.exists(offsetFile) ? Long.parseLong(new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim()) : 0;
+        recover();
+        drainerThread = new Thread(this::drainContinuously, "message-outbox");
+        drainerThread.setDaemon(true);
+        drainerThread.start();
+    }
+
+    private static volatile MessageOutbox instance;
+
+    /**
+     * method for get instance of {@link MessageOutbox}
+     * @return {@link MessageOutbox}
+     * @throws IOException when outbox isn't readable
+     */
+    public static MessageOutbox getInstance() throws IOException {
+        MessageOutbox result = instance;
+        if (result == null)
+            synchronized (MessageOutbox.class){
+                result = instance;
+                if (result == null)
+                    instance = result = new MessageOutbox();
+            }
+        return result;
+    }
+
+    /**
+     * @return boolean true when outbox is created and has calls which aren't replayed
+     */
+    public static boolean hasPendingCalls(){
+        MessageOutbox result = instance;
+        return result != null && result.getPendingCalls() > 0;
+    }
+
+    /**
+     * close instance if it was created
+     */
+    public static void closeInstance(){
+        MessageOutbox result = instance;
+        if (result != null)
+            result.close();
+    }
+
+    /**
+     * append script call, it is durable when method returns if message.outbox.fsync.interval.millis is 0
+     * @param script {@link LuaScript} called script
+     * @param keys {@link List<String>} keys of call
+     * @param args {@link List<byte[]>} arguments of call
+     * @throws IOException when call isn't written
+     */
+    public void append(LuaScript script, List<String> keys, List<byte[]> args) throws IOException {
+        byte[] record = record(script, keys, args);
+        synchronized (this) {
+            if (closed)
+                throw new IOException("outbox is closed");
+            channel.write(ByteBuffer.wrap(record), end);
+            if (fsyncIntervalMillis == 0)
+                channel.force(false);
+            else
+                dirty = true;
+            end += record.length;
+            pendingCalls++;
+            notifyAll();
+        }
+        log.debug("OUTBOX\nappended call of script {} with keys {}", script, keys);
+    }
+
+    /**
+     * @return int count of calls which aren't replayed
+     */
+    public synchronized int getPendingCalls(){
+        return pendingCalls;
+    }
+
+    /**
+     * replay all pending calls to redis now
+     * call which is rejected by redis is logged and isn't replayed again
+     * @return int count of replayed calls
+     * @throws IOException when outbox isn't readable
+     * @throws JedisException when redis is unavailable, calls are left in outbox
+     */
+    public int drain() throws IOException {
+        synchronized (drainLock) {
+            int countReplayedCalls = 0;
+            while (true) {
+                long batchEnd;
+                synchronized (this) {
+                    batchEnd = end;
+                }
+                List<Call> batch = new ArrayList<>();
+                long position = offset;
+                while (position < batchEnd && batch.size() < batchSize) {
+                    Call call = readCall(position);
+                    batch.add(call);
+                    position = call.getEnd();
+                }
+                if (batch.isEmpty())
+                    return countReplayedCalls;
+                replay(batch);
+                commit(position, batch.size());
+                countReplayedCalls += batch.size();
+            }
+        }
+    }
+
+    /**
+     * stop background thread and sync outbox to disk, pending calls are replayed by next process
+     */
+    public void close(){
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            drainerThread.join(retryMillis + fsyncIntervalMillis + 1000);
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.error("error while closing outbox:\n{}", e.getLocalizedMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (MessageOutbox.class) {
+            if (instance == this)
+                instance = null;
+        }
+        log.debug("OUTBOX\noutbox closed");
+    }
+
+    /**
+     * @param channel {@link FileChannel} outbox file
+     * @return {@link FileLock} exclusive lock of file or null when file is locked by another outbox
+     * @throws IOException when file can't be locked
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            //the file is locked by this process
+            return null;
+        }
+    }
+
+    /**
+     * replay calls until outbox is closed
+     */
+    private void drainContinuously(){
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!closed && pendingCalls == 0)
+                        wait(fsyncIntervalMillis == 0 ? 0 : fsyncIntervalMillis);
+                    if (dirty) {
+                        channel.force(false);
+                        dirty = false;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    log.error("error while syncing outbox:\n{}", e.getLocalizedMessage());
+                }
+                if (closed)
+                    return;
+            }
+            try {
+                int countReplayedCalls = drain();
+                if (countReplayedCalls > 0)
+                    log.info("replayed {} calls from outbox", countReplayedCalls);
+            } catch (JedisException | IOException e) {
+                log.warn("calls aren't replayed from outbox, retry in {} ms:\n{}", retryMillis, e.getLocalizedMessage());
+                sleep(retryMillis);
+            }
+        }
+    }
+
+    /**
+     * call scripts in pipeline, consecutive calls of the same script are sent together
+     * @param batch {@link List<Call>} calls in order of appending
+     */
+    private void replay(List<Call> batch){
+        int from = 0;
+        while (from < batch.size()) {
+            LuaScript script = batch.get(from).getScript();
+            int to = from;
+            List<List<String>> keys = new ArrayList<>();
+            List<List<byte[]>> args = new ArrayList<>();
+            while (to < batch.size() && batch.get(to).getScript() == script) {
+                keys.add(batch.get(to).getKeys());
+                args.add(batch.get(to).getArgs());
+                to++;
+            }
+            List<Object> replies = JedisClient.getInstance().evalBinaryScripts(script, keys, args);
+            for (int i = 0; i < replies.size(); i++) {
+                Object reply = replies.get(i);
+                if (reply instanceof JedisDataException)
+                    log.error("call of script {} with keys {} from outbox is failed:\n{}", script, keys.get(i), ((JedisDataException) reply).getLocalizedMessage());
+                else if (reply == null)
+                    log.warn("call of script {} with keys {} from outbox is rejected by script", script, keys.get(i));
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * remember position of the first call which isn't replayed, outbox is truncated when all calls are replayed
+     * @param position long position after replayed calls
+     * @param countReplayedCalls int count of replayed calls
+     * @throws IOException when offset isn't written
+     */
+    private synchronized void commit(long position, int countReplayedCalls) throws IOException {
+        if (position == end) {
+            channel.truncate(0);
+            channel.force(false);
+            position = end = 0;
+        }
+        writeOffset(position);
+        offset = position;
+        pendingCalls -= countReplayedCalls;
+    }
+
+    /**
+     * count pending calls and cut incomplete call written when previous process stopped
+     * @throws IOException when outbox isn't readable
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (offset > size)
+            offset = size;
+        long position = offset;
+        while (position < size) {
+            try {
+                position = readCall(position).getEnd();
+                pendingCalls++;
+            } catch (IOException e) {
+                log.warn("incomplete call at position {} is cut from outbox", position);
+                channel.truncate(position);
+                break;
+            }
+        }
+        end = position;
+        log.debug("OUTBOX\n{} pending calls in outbox", pendingCalls);
+    }
+
+    /**
+     * @param position long position of call
+     * @return {@link Call}
+     * @throws IOException when call is incomplete or damaged
+     */
+    private Call readCall(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, position);
+        int length = header.getInt(0);
+        long crc = header.getLong(Integer.BYTES);
+        if (length < 0 || position + RECORD_HEADER_SIZE + length > channel.size())
+            throw new IOException("call is incomplete");
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, position + RECORD_HEADER_SIZE);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.array());
+        if (checksum.getValue() != crc)
+            throw new IOException("call is damaged");
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()))) {
+            LuaScript script = LuaScript.valueOf(in.readUTF());
+            List<String> keys = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--)
+                keys.add(in.readUTF());
+            List<byte[]> args = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                byte[] arg = new byte[in.readInt()];
+                in.readFully(arg);
+                args.add(arg);
+            }
+            return new Call(script, keys, args, position + RECORD_HEADER_SIZE + length);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unknown script of call");
+        }
+    }
+
+    /**
+     * @param buffer {@link ByteBuffer} filled buffer
+     * @param position long position in outbox
+     * @throws IOException when outbox ends before buffer is filled
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + buffer.position());
+            if (count < 0)
+                throw new IOException("call is incomplete");
+        }
+    }
+
+    /**
+     * @param position long position of the first call which isn't replayed
+     * @throws IOException when offset isn't written
+     */
+    private void writeOffset(long position) throws IOException {
+        Path temporaryFile = offsetFile.resolveSibling(OFFSET_FILE_NAME.concat(".tmp"));
+        Files.write(temporaryFile, String.valueOf(position).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+        Files.move(temporaryFile, offsetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param script {@link LuaScript} called script
+     * @param keys {@link List<String>} keys of call
+     * @param args {@link List<byte[]>} arguments of call
+     * @return byte[] record of call with header
+     * @throws IOException when call isn't serialized
+     */
+    private static byte[] record(LuaScript script, List<String> keys, List<byte[]> args) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeUTF(script.name());
+            out.writeInt(keys.size());
+            for (String key : keys)
+                out.writeUTF(key);
+            out.writeInt(args.size());
+            for (byte[] arg : args) {
+                out.writeInt(arg.length);
+                out.write(arg);
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.toByteArray());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.size());
+        record.putInt(payload.size());
+        record.putLong(checksum.getValue());
+        record.put(payload.toByteArray());
+        return record.array();
+    }
+
+    /**
+     * @param millis long pause
+     */
+    private static void sleep(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * script call read from outbox
+     */
+    private static class Call {
+
+        private final LuaScript script;
+        private final List<String> keys;
+        private final List<byte[]> args;
+        private final long end;
+
+        /**
+         * default constructor
+         * @param script {@link LuaScript} called script
+         * @param keys {@link List<String>} keys of call
+         * @param args {@link List<byte[]>} arguments of call
+         * @param end long position after call in outbox
+         */
+        private Call(LuaScript script, List<String> keys, List<byte[]> args, long end) {
+            this.script = script;
+            this.keys = keys;
+            this.args = args;
+            this.end = end;
+        }
+
+        private LuaScript getScript() {
+            return script;
+        }
+
+        private List<String> getKeys() {
+            return keys;
+        }
+
+        private List<byte[]> getArgs() {
+            return args;
+        }
+
+        private long getEnd() {
+            return end;
+        }
+
+    }
+
+}
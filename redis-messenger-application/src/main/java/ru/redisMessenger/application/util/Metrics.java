@@ -0,0 +1,195 @@
+package ru.redisMessenger.application.util;
+
+import lombok.extern.log4j.Log4j2;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * registry of {@link OperationMetrics} of redis commands and service operations
+ * every metrics is registered as MBean ru.redisMessenger:type=RedisCommand|ServiceOperation,name=...
+ * and written to log every metrics.dump.interval.seconds, metrics.enabled = false turns off recording
+ */
+@Log4j2
+public class Metrics {
+
+    private static final String DOMAIN = "ru.redisMessenger";
+    private static final String TYPE_REDIS_COMMAND = "RedisCommand";
+    private static final String TYPE_SERVICE_OPERATION = "ServiceOperation";
+    private static final String DUMP_FORMAT = "%-18s %-26s %10s %8s %10s %10s %10s %10s %10s%n";
+
+    private final boolean enabled;
+    private final OperationMetrics disabledMetrics;
+    private final ConcurrentMap<String, OperationMetrics> redisCommands = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OperationMetrics> serviceOperations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ObjectName, OperationMetrics> registeredMetrics = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * default constructor
+     */
+    private Metrics(){
+        Configuration configuration = Configuration.getInstance();
+        enabled = Boolean.parseBoolean(configuration.getProperty(Configuration.Property.METRICS_ENABLED.getPropertyName()));
+        disabledMetrics = new OperationMetrics("disabled", false);
+        long dumpIntervalSeconds = Long.parseLong(configuration.getProperty(Configuration.Property.METRICS_DUMP_INTERVAL_SECONDS.getPropertyName()));
+        if (enabled && dumpIntervalSeconds > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::logDump, dumpIntervalSeconds, dumpIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private static volatile Metrics instance;
+
+    /**
+     * method for get instance of {@link Metrics}
+     * @return {@link Metrics}
+     */
+    public static Metrics getInstance(){
+        Metrics result = instance;
+        if (result == null)
+            synchronized (Metrics.class){
+                result = instance;
+                if (result == null)
+                    instance = result = new Metrics();
+            }
+        return result;
+    }
+
+    /**
+     * stop dump of instance and unregister its MBeans, if it was created
+     */
+    public static void closeInstance(){
+        Metrics result = instance;
+        if (result != null)
+            result.close();
+    }
+
+    /**
+     * @param command {@link String} name of redis command, e.g. GET
+     * @return {@link OperationMetrics} of command, created on the first call
+     */
+    public OperationMetrics redisCommand(String command){
+        return metrics(redisCommands, TYPE_REDIS_COMMAND, command);
+    }
+
+    /**
+     * @param operation {@link String} name of service operation, e.g. sendMessage
+     * @return {@link OperationMetrics} of operation, created on the first call
+     */
+    public OperationMetrics serviceOperation(String operation){
+        return metrics(serviceOperations, TYPE_SERVICE_OPERATION, operation);
+    }
+
+    /**
+     * text table of all called redis commands and service operations
+     * @return {@link String}
+     */
+    public String dump(){
+        StringBuilder table = new StringBuilder(String.format(DUMP_FORMAT, "type", "name", "count", "errors",
+                "mean,us", "p50,us", "p99,us", "p99.9,us", "max,us"));
+        appendDump(table, TYPE_REDIS_COMMAND, redisCommands);
+        appendDump(table, TYPE_SERVICE_OPERATION, serviceOperations);
+        return table.toString();
+    }
+
+    /**
+     * stop periodic dump and unregister MBeans, recording continues
+     */
+    public synchronized void close(){
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredMetrics.keySet()) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                log.warn("MBean {} isn't unregistered:\n{}", name, e.getLocalizedMessage());
+            }
+            registeredMetrics.remove(name);
+        }
+    }
+
+    /**
+     * get metrics, new metrics is registered as MBean
+     * lookup of existing metrics doesn't lock, so it is cheap enough for every redis command
+     * @param metrics {@link ConcurrentMap} metrics of one type by name
+     * @param type {@link String} type of MBean
+     * @param name {@link String} name of command or operation
+     * @return {@link OperationMetrics}
+     */
+    private OperationMetrics metrics(ConcurrentMap<String, OperationMetrics> metrics, String type, String name){
+        if (!enabled)
+            return disabledMetrics;
+        OperationMetrics result = metrics.get(name);
+        if (result != null)
+            return result;
+        OperationMetrics created = new OperationMetrics(name, true);
+        result = metrics.putIfAbsent(name, created);
+        if (result != null)
+            return result;
+        register(type, created);
+        return created;
+    }
+
+    /**
+     * register metrics in platform MBean server, metrics works without MBean when registration fails
+     * @param type {@link String} type of MBean
+     * @param metrics {@link OperationMetrics}
+     */
+    private void register(String type, OperationMetrics metrics){
+        try {
+            ObjectName name = new ObjectName(DOMAIN.concat(":type=").concat(type).concat(",name=").concat(metrics.getName()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(metrics, name);
+            registeredMetrics.put(name, metrics);
+        } catch (JMException e) {
+            log.warn("metrics {} of type {} isn't registered as MBean:\n{}", metrics.getName(), type, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @param table {@link StringBuilder} dump
+     * @param type {@link String} type of metrics
+     * @param metrics {@link Map} metrics of one type by name
+     */
+    private static void appendDump(StringBuilder table, String type, Map<String, OperationMetrics> metrics){
+        for (OperationMetrics operationMetrics : new TreeMap<>(metrics).values()) {
+            if (operationMetrics.getCount() == 0)
+                continue;
+            table.append(String.format(DUMP_FORMAT, type, operationMetrics.getName(), operationMetrics.getCount(),
+                    operationMetrics.getErrors(), String.format("%.1f", operationMetrics.getMeanMicros()),
+                    operationMetrics.getP50Micros(), operationMetrics.getP99Micros(), operationMetrics.getP999Micros(),
+                    operationMetrics.getMaxMicros()));
+        }
+    }
+
+    /**
+     * periodic dump, errors don't stop next dumps
+     */
+    private void logDump(){
+        try {
+            log.info("METRICS\n{}", dump());
+        } catch (RuntimeException e) {
+            log.error("error while writing metrics:\n{}", e.getLocalizedMessage());
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package ru.redisMessenger.application.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * count of calls, count of errors and {@link LatencyHistogram} of one redis command or service operation
+ * recording is lock-free, disabled metrics record nothing
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final String name;
+    private final boolean enabled;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * default constructor
+     * @param name {@link String} name of redis command or service operation
+     * @param enabled boolean false when calls aren't recorded
+     */
+    OperationMetrics(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    /**
+     * record latency of one call
+     * @param nanos long latency
+     */
+    public void record(long nanos) {
+        if (enabled)
+            latencies.record(nanos);
+    }
+
+    /**
+     * record one failed call, its latency is recorded by {@link #record(long)} as well
+     */
+    public void recordError() {
+        if (enabled)
+            errors.increment();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.getMean() / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    @Override
+    public long getP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getMax());
+    }
+
+}
@@ -0,0 +1,48 @@
+package ru.redisMessenger.application.util;
+
+/**
+ * JMX view of {@link OperationMetrics}, latencies are in microseconds since start of process
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * @return {@link String} name of redis command or service operation
+     */
+    String getName();
+
+    /**
+     * @return long count of calls, failed calls included
+     */
+    long getCount();
+
+    /**
+     * @return long count of failed calls
+     */
+    long getErrors();
+
+    /**
+     * @return double mean latency
+     */
+    double getMeanMicros();
+
+    /**
+     * @return long median latency
+     */
+    long getP50Micros();
+
+    /**
+     * @return long 99th percentile of latency
+     */
+    long getP99Micros();
+
+    /**
+     * @return long 99.9th percentile of latency
+     */
+    long getP999Micros();
+
+    /**
+     * @return long the highest latency
+     */
+    long getMaxMicros();
+
+}
@@ -0,0 +1,405 @@
+package ru.redisMessenger.application.util;
+
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * subscriptions of the whole process over one pub/sub connection
+ * the connection is read by one background thread, messages are dispatched to listeners by bounded executors,
+ * all messages of one channel are dispatched by the same executor, so listeners receive them in order of publishing
+ * when an executor queue is full the reading thread waits, so a slow listener slows down reading instead of losing messages
+ */
+@Log4j2
+public class SubscriptionManager {
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final String redisHost;
+    private final int redisPort;
+    private final int timeout;
+    private final int queueCapacity;
+    //the connection is always subscribed to own control channel, so it is ready to subscribe to any channel at runtime
+    private final byte[] controlChannel = SafeEncoder.encode("subscription-manager:".concat(UUID.randomUUID().toString()));
+    private final Map<String, Set<BiConsumer<String, byte[]>>> listeners = new ConcurrentHashMap<>();
+    //released when server confirms subscription to channel, so messages published after subscribe are received
+    private final Map<String, CountDownLatch> confirmations = new ConcurrentHashMap<>();
+    private final List<ThreadPoolExecutor> executors = new ArrayList<>();
+
+    private Thread subscriberThread;
+    private Subscriber subscriber;
+    private CountDownLatch ready;
+    private volatile boolean closed;
+    //changed when connection is lost, messages published while connection was reopened are lost
+    private volatile long connectionGeneration;
+
+    /**
+     * default constructor
+     */
+    private SubscriptionManager(){
+        Configuration configuration = Configuration.getInstance();
+        redisHost = configuration.getProperty(Configuration.Property.REDIS_HOST.getPropertyName());
+        redisPort = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_PORT.getPropertyName()));
+        timeout = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_TIMEOUT_MILLIS.getPropertyName()));
+        queueCapacity = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_SUBSCRIPTION_QUEUE_CAPACITY.getPropertyName()));
+        int threads = Integer.parseInt(configuration.getProperty(Configuration.Property.REDIS_SUBSCRIPTION_THREADS.getPropertyName()));
+        for (int i = 0; i < threads; i++)
+            executors.add(dispatcher(i));
+    }
+
+    private static volatile SubscriptionManager instance;
+
+    /**
+     * method for get instance of {@link SubscriptionManager}
+     * @return {@link SubscriptionManager}
+     */
+    public static SubscriptionManager getInstance(){
+        SubscriptionManager result = instance;
+        if (result == null)
+            synchronized (SubscriptionManager.class){
+                result = instance;
+                if (result == null)
+                    instance = result = new SubscriptionManager();
+            }
+        return result;
+    }
+
+    /**
+     * add listener of channel, the channel is subscribed when it gets the first listener
+     * @param channel {@link String} for subscribe
+     * @param listener {@link BiConsumer} gets channel and message
+     * @return {@link Subscription} for unsubscribe
+     */
+    public Subscription subscribe(String channel, BiConsumer<String, byte[]> listener){
+        CountDownLatch currentReady;
+        CountDownLatch confirmation;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("subscription manager is closed");
+            Set<BiConsumer<String, byte[]>> channelListeners = listeners.computeIfAbsent(channel, key -> new CopyOnWriteArraySet<>());
+            channelListeners.add(listener);
+            confirmation = channelListeners.size() == 1
+                    ? confirmations.computeIfAbsent(channel, key -> new CountDownLatch(1)) : confirmations.get(channel);
+            if (subscriberThread == null)
+                startSubscriber();
+            else if (channelListeners.size() == 1 && ready.getCount() == 0)
+                subscriber.subscribe(SafeEncoder.encode(channel));
+            currentReady = ready;
+        }
+        awaitReady(currentReady);
+        if (confirmation != null)
+            awaitConfirmation(channel, confirmation);
+        log.debug("SUBSCRIBE\nlistener added to channel {}", channel);
+        return new Subscription(channel, listener);
+    }
+
+    /**
+     * remove listener of channel, the channel is unsubscribed when it loses the last listener
+     * @param channel {@link String} for unsubscribe
+     * @param listener {@link BiConsumer} added by {@link #subscribe(String, BiConsumer)}
+     */
+    public synchronized void unsubscribe(String channel, BiConsumer<String, byte[]> listener){
+        Set<BiConsumer<String, byte[]>> channelListeners = listeners.get(channel);
+        if (channelListeners == null || !channelListeners.remove(listener))
+            return;
+        if (channelListeners.isEmpty()) {
+            listeners.remove(channel);
+            confirm(channel);
+            if (ready.getCount() == 0)
+                subscriber.unsubscribe(SafeEncoder.encode(channel));
+        }
+        log.debug("SUBSCRIBE\nlistener removed from channel {}", channel);
+    }
+
+    /**
+     * @return int count of channels with listeners
+     */
+    public int getChannelsCount(){
+        return listeners.size();
+    }
+
+    /**
+     * @return int count of received messages waiting for dispatch to listeners
+     */
+    public int getQueueDepth(){
+        return executors.stream().mapToInt(executor -> executor.getQueue().size()).sum();
+    }
+
+    /**
+     * close instance if it was created
+     */
+    public static void closeInstance(){
+        SubscriptionManager result = instance;
+        if (result != null)
+            result.close();
+    }
+
+    /**
+     * unsubscribe from all channels, close connection and stop dispatching
+     * waits until the reading thread and executors finish, so no threads or connections are left
+     */
+    public void close(){
+        Thread currentSubscriberThread;
+        synchronized (this) {
+            closed = true;
+            listeners.clear();
+            new ArrayList<>(confirmations.keySet()).forEach(this::confirm);
+            if (subscriber != null && subscriber.isSubscribed())
+                subscriber.unsubscribe();
+            currentSubscriberThread = subscriberThread;
+        }
+        executors.forEach(ThreadPoolExecutor::shutdown);
+        try {
+            if (currentSubscriberThread != null)
+                currentSubscriberThread.join(timeout);
+            for (ThreadPoolExecutor executor : executors)
+                executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (SubscriptionManager.class) {
+            if (instance == this)
+                instance = null;
+        }
+        log.debug("SUBSCRIBE\nsubscription manager closed");
+    }
+
+    /**
+     * @return boolean true when the reading thread is running
+     */
+    boolean isRunning(){
+        Thread currentSubscriberThread = subscriberThread;
+        return currentSubscriberThread != null && currentSubscriberThread.isAlive();
+    }
+
+    /**
+     * start background thread, which holds connection and reads messages
+     */
+    private void startSubscriber(){
+        ready = new CountDownLatch(1);
+        subscriber = new Subscriber();
+        subscriberThread = new Thread(this::readMessages, "redis-subscriber");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    /**
+     * read messages until manager is closed, connection is reopened when it is lost
+     */
+    private void readMessages(){
+        while (!closed) {
+            Subscriber currentSubscriber;
+            synchronized (this) {
+                currentSubscriber = subscriber;
+            }
+            try (Jedis jedis = new Jedis(redisHost, redisPort, timeout)) {
+                jedis.subscribe(currentSubscriber, controlChannel);
+            } catch (JedisException e) {
+                log.error("subscription connection is lost:\n{}", e.getLocalizedMessage());
+                synchronized (this) {
+                    if (closed)
+                        return;
+                    connectionGeneration++;
+                    ready = new CountDownLatch(1);
+                    subscriber = new Subscriber();
+                }
+                sleep(RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * wait until connection is subscribed
+     * @param currentReady {@link CountDownLatch} released when connection is subscribed
+     */
+    private void awaitReady(CountDownLatch currentReady){
+        try {
+            if (!currentReady.await(timeout, TimeUnit.MILLISECONDS))
+                log.warn("subscription connection isn't ready, channels will be subscribed when it is ready");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * wait until server confirms subscription to channel
+     * @param channel {@link String} subscribed channel
+     * @param confirmation {@link CountDownLatch} released when subscription is confirmed
+     */
+    private void awaitConfirmation(String channel, CountDownLatch confirmation){
+        try {
+            if (!confirmation.await(timeout, TimeUnit.MILLISECONDS))
+                log.warn("subscription to channel {} isn't confirmed, messages published before confirmation can be lost", channel);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * release threads waiting for subscription to channel
+     * @param channel {@link String} channel
+     */
+    private void confirm(String channel){
+        CountDownLatch confirmation = confirmations.remove(channel);
+        if (confirmation != null)
+            confirmation.countDown();
+    }
+
+    /**
+     * send message to listeners of channel
+     * @param channel {@link String} channel of message
+     * @param message byte[] message
+     */
+    private void dispatch(String channel, byte[] message){
+        Set<BiConsumer<String, byte[]>> channelListeners = listeners.get(channel);
+        if (channelListeners == null)
+            return;
+        ThreadPoolExecutor executor = executors.get(Math.floorMod(channel.hashCode(), executors.size()));
+        for (BiConsumer<String, byte[]> listener : channelListeners)
+            try {
+                executor.execute(() -> {
+                    try {
+                        listener.accept(channel, message);
+                    } catch (RuntimeException e) {
+                        log.error("error in listener of channel {}:\n{}", channel, e.getLocalizedMessage());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("message of channel {} isn't dispatched, subscription manager is closed", channel);
+            }
+    }
+
+    /**
+     * single thread executor with bounded queue, full queue blocks the reading thread
+     * @param number int number of executor
+     * @return {@link ThreadPoolExecutor}
+     */
+    private ThreadPoolExecutor dispatcher(int number){
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "redis-subscription-dispatcher-".concat(String.valueOf(number)));
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> {
+                    if (executor.isShutdown())
+                        throw new RejectedExecutionException();
+                    try {
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+    }
+
+    /**
+     * @param millis long pause
+     */
+    private static void sleep(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * listener added to channel
+     */
+    public class Subscription {
+
+        private final String channel;
+        private final BiConsumer<String, byte[]> listener;
+        private final long generation;
+
+        /**
+         * default constructor
+         * @param channel {@link String} subscribed channel
+         * @param listener {@link BiConsumer} listener of channel
+         */
+        private Subscription(String channel, BiConsumer<String, byte[]> listener) {
+            this.channel = channel;
+            this.listener = listener;
+            this.generation = connectionGeneration;
+        }
+
+        /**
+         * @return boolean true when listener has received all messages of channel since subscription,
+         * false after unsubscribe, close of manager or loss of connection
+         */
+        public boolean isActive() {
+            Set<BiConsumer<String, byte[]>> channelListeners = listeners.get(channel);
+            return !closed && generation == connectionGeneration && channelListeners != null && channelListeners.contains(listener);
+        }
+
+        /**
+         * @return {@link String} subscribed channel
+         */
+        public String getChannel() {
+            return channel;
+        }
+
+        /**
+         * remove listener from channel
+         */
+        public void unsubscribe() {
+            SubscriptionManager.this.unsubscribe(channel, listener);
+        }
+
+    }
+
+    /**
+     * reads pub/sub connection
+     */
+    private class Subscriber extends BinaryJedisPubSub {
+
+        @Override
+        public void onMessage(byte[] channel, byte[] message) {
+            dispatch(SafeEncoder.encode(channel), message);
+        }
+
+        @Override
+        public void onSubscribe(byte[] channel, int subscribedChannels) {
+            if (!Arrays.equals(channel, controlChannel)) {
+                log.debug("SUBSCRIBE\nsubscribe to channel {}", SafeEncoder.encode(channel));
+                confirm(SafeEncoder.encode(channel));
+                return;
+            }
+            //connection is ready: subscribe to all channels, including the ones added while it was opened
+            synchronized (SubscriptionManager.this) {
+                if (closed) {
+                    unsubscribe();
+                    return;
+                }
+                if (!listeners.isEmpty())
+                    subscribe(listeners.keySet().stream().map(SafeEncoder::encode).toArray(byte[][]::new));
+                ready.countDown();
+            }
+        }
+
+        @Override
+        public void onUnsubscribe(byte[] channel, int subscribedChannels) {
+            log.debug("SUBSCRIBE\nunsubscribe from channel {}", SafeEncoder.encode(channel));
+        }
+
+    }
+
+}
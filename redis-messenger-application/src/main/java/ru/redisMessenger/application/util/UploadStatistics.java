@@ -0,0 +1,22 @@
+package ru.redisMessenger.application.util;
+
+import lombok.Data;
+
+/**
+ * statistics of upload
+ */
+@Data
+public class UploadStatistics {
+
+    private final long lines;
+    private final long bytes;
+    private final long elapsedMillis;
+
+    /**
+     * @return long written bytes per second
+     */
+    public long getBytesPerSecond() {
+        return elapsedMillis == 0 ? bytes * 1000 : bytes * 1000 / elapsedMillis;
+    }
+
+}
@@ -0,0 +1,10 @@
+-- store message in shared history of group and publish it to group chat atomically, only when author is member of group
+-- KEYS[1] members key of group, KEYS[2] messages key of group
+-- ARGV[1] author user key, ARGV[2] chat channel of group, ARGV[3] message, ARGV[4] time of message in millis, score in history
+-- returns count of chat subscribers which received message or nil when author isn't member of group
+
+if redis.call('SISMEMBER', KEYS[1], ARGV[1]) == 0 then
+    return false
+end
+redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])
+return redis.call('PUBLISH', ARGV[2], ARGV[3])
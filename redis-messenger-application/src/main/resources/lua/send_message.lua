@@ -0,0 +1,14 @@
+-- store message and publish it to chat atomically, only when contact exists
+-- KEYS[1] contact user key, KEYS[2] messages key of conversation
+-- ARGV[1] chat channel of conversation, ARGV[2] message, ARGV[3] time of message in millis, score in history
+-- returns count of chat subscribers which received message or nil when contact doesn't exist
+-- message contains its id, so repeated call with the same message doesn't store or publish it again and calls can be replayed,
+-- while another message with the same text and time is stored
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return false
+end
+if redis.call('ZADD', KEYS[2], ARGV[3], ARGV[2]) == 0 then
+    return 0
+end
+return redis.call('PUBLISH', ARGV[1], ARGV[2])
@@ -0,0 +1,32 @@
+package ru.redisMessenger.application;
+
+import org.junit.Test;
+import ru.redisMessenger.application.service.RedisMessengerService;
+import ru.redisMessenger.application.util.JedisClient;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for {@link LoadGenerator}
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    public void loadBySchedule() {
+        LoadGenerator generator = new LoadGenerator(new RedisMessengerService(), 20, 4, 400, 2, LoadGenerator.mix(70, 20, 10));
+        String report = generator.run();
+
+        long operations = 0;
+        for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+            operations += generator.getResponseTimes(operation).getCount();
+            assertEquals(0, generator.getErrors(operation));
+            assertTrue(report.contains(operation.name().toLowerCase()));
+        }
+        //operations are scheduled, so their count doesn't depend on speed of redis
+        assertEquals(800, operations);
+        assertTrue(generator.getResponseTimes(LoadGenerator.Operation.SEND).getCount() > generator.getResponseTimes(LoadGenerator.Operation.SUBSCRIBE).getCount());
+        assertTrue(JedisClient.getInstance().getKeys("user:*:loadUser*").isEmpty());
+        assertTrue(new RedisMessengerService().getUsersKeys().stream().noneMatch(userKey -> userKey.contains(":loadUser")));
+    }
+
+}
@@ -2,10 +2,13 @@ package ru.redisMessenger.application;
 
 import org.junit.Test;
 import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.Message;
 import ru.redisMessenger.core.entities.SimpleUser;
 import ru.redisMessenger.core.entities.SuperUser;
 import ru.redisMessenger.core.entities.User;
 
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -34,6 +37,7 @@ public class UserActionHandlerTest {
         assertFalse(simpleUserSet.contains(actionHandler.MESSAGE_ACTION_UPLOAD_MESSAGES));
         assertFalse(simpleUserSet.contains(actionHandler.MESSAGE_ACTION_ADD_USER));
         assertFalse(simpleUserSet.contains(actionHandler.MESSAGE_ACTION_DELETE_USER));
+        assertFalse(simpleUserSet.contains(actionHandler.MESSAGE_ACTION_MIGRATE_CONVERSATIONS));
 
         Set<String> advancedUserSet = actionHandler.enabledCommandsSet(advancedUser);
         assertTrue(advancedUserSet.containsAll(simpleUserSet));
@@ -46,7 +50,17 @@ public class UserActionHandlerTest {
         assertTrue(superUserSet.containsAll(advancedUserSet));
         assertTrue(superUserSet.contains(actionHandler.MESSAGE_ACTION_ADD_USER));
         assertTrue(superUserSet.contains(actionHandler.MESSAGE_ACTION_DELETE_USER));
+        assertTrue(superUserSet.contains(actionHandler.MESSAGE_ACTION_MIGRATE_CONVERSATIONS));
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void chatLine() throws Exception {
+        Message message = new Message();
+        message.setFrom(new SuperUser("superUser"));
+        message.setText("hello!!!");
+        message.setDateCreate(new GregorianCalendar(2017, Calendar.APRIL, 23, 13, 5, 7).getTime());
+        assertEquals("[13:05:07] superUser: hello!!!", new UserActionHandler().chatLine(message));
+    }
+
+}
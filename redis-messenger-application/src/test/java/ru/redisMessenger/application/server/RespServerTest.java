@@ -0,0 +1,209 @@
+package ru.redisMessenger.application.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link RespServer}
+ */
+public class RespServerTest {
+
+    private static final String SCRIPT = "return redis.call('SADD', KEYS[1], ARGV[1])";
+
+    private RespServer server;
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RespServer("localhost", 0);
+        server.registerScript(SCRIPT, (redis, keys, args) -> redis.call("SADD", keys.get(0), args.get(0)));
+        server.start();
+        jedis = new Jedis("localhost", server.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        jedis.close();
+        server.close();
+    }
+
+    @Test
+    public void stringsAndKeys() {
+        assertEquals("PONG", jedis.ping());
+        assertEquals("OK", jedis.set("key", "value"));
+        assertEquals(Long.valueOf(0), jedis.setnx("key", "other"));
+        assertEquals("value", jedis.get("key"));
+        assertEquals("string", jedis.type("key"));
+        assertEquals("OK", jedis.rename("key", "renamed"));
+        assertNull(jedis.get("key"));
+        assertEquals(Collections.singleton("renamed"), jedis.keys("re*"));
+        assertEquals(Long.valueOf(1), jedis.del("renamed", "key"));
+        assertEquals("none", jedis.type("renamed"));
+        jedis.sadd("set", "member");
+        try {
+            jedis.get("set");
+            fail("value of set isn't a string");
+        } catch (JedisDataException e) {
+            assertTrue(e.getMessage().startsWith("WRONGTYPE"));
+        }
+        assertEquals(Long.valueOf(1), jedis.srem("set", "member"));
+        assertFalse(jedis.exists("set"));
+    }
+
+    @Test
+    public void scanReturnsKeysRemovedDuringScan() {
+        int countKeys = 250;
+        for (int i = 0; i < countKeys; i++)
+            jedis.set("scan:".concat(String.valueOf(i)), "value");
+        jedis.set("other", "value");
+        Set<String> scanned = new HashSet<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> step = jedis.scan(cursor, new ScanParams().match("scan:*").count(10));
+            scanned.addAll(step.getResult());
+            if (!step.getResult().isEmpty())
+                jedis.del(step.getResult().toArray(new String[0]));
+            cursor = step.getStringCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        assertEquals(countKeys, scanned.size());
+        assertEquals(Collections.singleton("other"), jedis.keys("*"));
+    }
+
+    @Test
+    public void sortedSetRanges() {
+        for (int i = 1; i <= 10; i++)
+            jedis.zadd("zset", i, "member".concat(String.valueOf(i)));
+        assertEquals(Long.valueOf(0), jedis.zadd("zset", 10, "member10"));
+        List<Tuple> page = new ArrayList<>(jedis.zrevrangeByScoreWithScores("zset", "(8", "-inf", 1, 3));
+        assertEquals(3, page.size());
+        assertEquals("member6", page.get(0).getElement());
+        assertEquals(6.0, page.get(0).getScore(), 0);
+        assertEquals("member4", page.get(2).getElement());
+        assertEquals(Arrays.asList("member9", "member10"), new ArrayList<>(jedis.zrangeByScore("zset", "9", "+inf")));
+        assertEquals(Arrays.asList("member1", "member2"), new ArrayList<>(jedis.zrange("zset", 0, 1)));
+        assertEquals(Long.valueOf(2), jedis.zrem("zset", "member1", "member2", "absent"));
+        assertEquals(Long.valueOf(8), jedis.zcard("zset"));
+        assertEquals("zset", jedis.type("zset"));
+    }
+
+    @Test
+    public void transactionAndScript() {
+        Pipeline pipeline = jedis.pipelined();
+        pipeline.multi();
+        pipeline.hset("hash", "field", "value");
+        pipeline.sadd("set", "a", "b");
+        Response<List<Object>> exec = pipeline.exec();
+        pipeline.sync();
+        assertEquals(Arrays.asList(1L, 2L), exec.get());
+        assertEquals("value", jedis.hget("hash", "field"));
+
+        String sha = jedis.scriptLoad(SCRIPT);
+        assertEquals(1L, jedis.evalsha(sha, Collections.singletonList("set"), Collections.singletonList("c")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), jedis.smembers("set"));
+        jedis.scriptFlush();
+        try {
+            jedis.evalsha(sha, Collections.singletonList("set"), Collections.singletonList("d"));
+            fail("script is flushed");
+        } catch (JedisNoScriptException e) {
+            assertFalse(jedis.sismember("set", "d"));
+        }
+        try {
+            jedis.scriptLoad("return 1");
+            fail("lua isn't interpreted");
+        } catch (JedisDataException e) {
+            assertTrue(e.getMessage().contains("isn't registered"));
+        }
+    }
+
+    @Test
+    public void publishToSubscribers() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        JedisPubSub subscriber = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                received.add(channel.concat("=").concat(message));
+            }
+
+            @Override
+            public void onPMessage(String pattern, String channel, String message) {
+                received.add(pattern.concat("=").concat(message));
+            }
+
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                received.add(channel);
+            }
+        };
+        Thread subscriberThread = new Thread(() -> {
+            try (Jedis subscriberJedis = new Jedis("localhost", server.getPort())) {
+                subscriberJedis.subscribe(subscriber, "chat");
+            }
+        });
+        subscriberThread.start();
+        assertEquals("chat", received.poll(5, TimeUnit.SECONDS));
+        subscriber.psubscribe("ch*");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (subscriber.getSubscribedChannels() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(Long.valueOf(2), jedis.publish("chat", "hello"));
+        Set<String> messages = new HashSet<>(Arrays.asList(received.poll(5, TimeUnit.SECONDS), received.poll(5, TimeUnit.SECONDS)));
+        assertEquals(new HashSet<>(Arrays.asList("chat=hello", "ch*=hello")), messages);
+
+        subscriber.punsubscribe();
+        subscriber.unsubscribe();
+        subscriberThread.join(5000);
+        assertFalse(subscriberThread.isAlive());
+        assertEquals(Long.valueOf(0), jedis.publish("chat", "hello"));
+    }
+
+    @Test
+    public void manyConnections() throws Exception {
+        int countConnections = 100;
+        int countMembers = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(countConnections);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < countConnections; i++) {
+            String prefix = String.valueOf(i).concat(":");
+            futures.add(executor.submit(() -> {
+                try (Jedis connection = new Jedis("localhost", server.getPort())) {
+                    for (int j = 0; j < countMembers; j++) {
+                        connection.sadd("members", prefix.concat(String.valueOf(j)));
+                        connection.zadd("scores", j, prefix.concat(String.valueOf(j)));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertEquals(Long.valueOf(countConnections * countMembers), jedis.scard("members"));
+        assertEquals(Long.valueOf(countConnections * countMembers), jedis.zcard("scores"));
+    }
+
+}
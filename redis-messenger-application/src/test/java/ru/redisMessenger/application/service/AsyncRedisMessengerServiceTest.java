@@ -0,0 +1,88 @@
+package ru.redisMessenger.application.service;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.server.EmbeddedRedis;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.SuperUser;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link AsyncRedisMessengerService}
+ */
+public class AsyncRedisMessengerServiceTest {
+
+    private static final EmbeddedRedis REDIS = new EmbeddedRedis();
+
+    private AsyncRedisMessengerService service;
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        REDIS.start();
+    }
+
+    @AfterClass
+    public static void closeRedis() {
+        REDIS.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        JedisClient.getInstance().deleteValuesByPattern("user*");
+        JedisClient.getInstance().deleteValuesByPattern("message*");
+        service = new AsyncRedisMessengerService(new RedisMessengerService());
+        service.addUserAsync(new SuperUser("superUser")).get(5, TimeUnit.SECONDS);
+        service.addUserAsync(new AdvancedUser("advancedUser")).get(5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        JedisClient.getInstance().deleteValuesByPattern("user*");
+        JedisClient.getInstance().deleteValuesByPattern("message*");
+    }
+
+    @Test
+    public void concurrentMessages() throws Exception {
+        User superUser = service.getUserAsync("user:SuperUser:superUser").get(5, TimeUnit.SECONDS);
+        User advancedUser = service.getUserAsync("user:AdvancedUser:advancedUser").get(5, TimeUnit.SECONDS);
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Message message = new Message();
+            message.setFrom(i % 2 == 0 ? superUser : advancedUser);
+            message.setTo(i % 2 == 0 ? advancedUser : superUser);
+            message.setText("message ".concat(String.valueOf(i)));
+            futures.add(service.sendMessageAsync(message));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        MessagesPage page = service.getMessagesAsync(superUser, advancedUser, null, 3000).get(5, TimeUnit.SECONDS);
+        assertEquals(2000, page.getMessages().size());
+    }
+
+    @Test
+    public void exceptionOfOperation() throws Exception {
+        try {
+            service.getUserAsync("user:SuperUser:unknownUser").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RedisMessengerException);
+        }
+    }
+
+}
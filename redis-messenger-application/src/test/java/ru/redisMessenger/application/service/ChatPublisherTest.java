@@ -0,0 +1,183 @@
+package ru.redisMessenger.application.service;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.server.EmbeddedRedis;
+import ru.redisMessenger.application.util.Flow;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.SuperUser;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link ChatPublisher}
+ */
+public class ChatPublisherTest {
+
+    private static final EmbeddedRedis REDIS = new EmbeddedRedis();
+
+    private RedisMessengerService service;
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        REDIS.start();
+    }
+
+    @AfterClass
+    public static void closeRedis() {
+        REDIS.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        JedisClient.getInstance().deleteValuesByPattern("user*");
+        JedisClient.getInstance().deleteValuesByPattern("message*");
+        service = new RedisMessengerService();
+        service.addUser(new SuperUser("superUser"));
+        service.addUser(new AdvancedUser("advancedUser"));
+    }
+
+    @After
+    public void tearDown() {
+        JedisClient.getInstance().deleteValuesByPattern("user*");
+        JedisClient.getInstance().deleteValuesByPattern("message*");
+    }
+
+    @Test
+    public void messagesOnDemand() throws Exception {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        TestSubscriber subscriber = new TestSubscriber();
+        service.chatPublisher(advancedUser, superUser).subscribe(subscriber);
+        subscriber.subscription.request(2);
+        for (int i = 0; i < 5; i++) {
+            Message message = new Message();
+            message.setFrom(superUser);
+            message.setTo(advancedUser);
+            message.setText("message ".concat(String.valueOf(i)));
+            service.sendMessage(message);
+        }
+        awaitMessages(subscriber, 2);
+        Thread.sleep(200);
+        assertEquals(2, subscriber.messages.size());
+
+        subscriber.subscription.request(10);
+        awaitMessages(subscriber, 5);
+        for (int i = 0; i < 5; i++)
+            assertEquals("message ".concat(String.valueOf(i)), subscriber.messages.get(i).getText());
+        subscriber.subscription.cancel();
+    }
+
+    @Test
+    public void dropOldestMessages() throws Exception {
+        AtomicReference<Consumer<Message>> channel = new AtomicReference<>();
+        TestSubscriber subscriber = new TestSubscriber();
+        new ChatPublisher(listener -> {
+            channel.set(listener);
+            return SubscriptionManager.getInstance().subscribe("chat:publisher:test", (name, value) -> {});
+        }, 3, ChatPublisher.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+        for (int i = 0; i < 10; i++)
+            channel.get().accept(message(i));
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(3, subscriber.messages.size());
+        assertEquals("message 7", subscriber.messages.get(0).getText());
+        subscriber.subscription.cancel();
+    }
+
+    @Test
+    public void failWhenBufferIsFull() throws Exception {
+        AtomicReference<Consumer<Message>> channel = new AtomicReference<>();
+        TestSubscriber subscriber = new TestSubscriber();
+        new ChatPublisher(listener -> {
+            channel.set(listener);
+            return SubscriptionManager.getInstance().subscribe("chat:publisher:test", (name, value) -> {});
+        }, 3, ChatPublisher.OverflowPolicy.FAIL).subscribe(subscriber);
+        for (int i = 0; i < 4; i++)
+            channel.get().accept(message(i));
+        assertTrue(subscriber.error.get() instanceof RedisMessengerException);
+        subscriber.subscription.request(10);
+        assertTrue(subscriber.messages.isEmpty());
+    }
+
+    @Test
+    public void failWhenBlockedDeliveryIsInterrupted() throws Exception {
+        AtomicReference<Consumer<Message>> channel = new AtomicReference<>();
+        TestSubscriber subscriber = new TestSubscriber();
+        new ChatPublisher(listener -> {
+            channel.set(listener);
+            return SubscriptionManager.getInstance().subscribe("chat:publisher:test", (name, value) -> {});
+        }, 3, ChatPublisher.OverflowPolicy.BLOCK).subscribe(subscriber);
+        Thread listener = new Thread(() -> {
+            for (int i = 0; i < 4; i++)
+                channel.get().accept(message(i));
+        });
+        listener.start();
+        //the fourth message waits for free place in buffer
+        listener.join(200);
+        assertTrue(listener.isAlive());
+        listener.interrupt();
+        listener.join(5000);
+        assertFalse(listener.isAlive());
+        assertTrue(subscriber.error.get() instanceof RedisMessengerException);
+        subscriber.subscription.request(10);
+        assertTrue(subscriber.messages.isEmpty());
+    }
+
+    private static Message message(int number) {
+        Message message = new Message();
+        message.setText("message ".concat(String.valueOf(number)));
+        return message;
+    }
+
+    private static void awaitMessages(TestSubscriber subscriber, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (subscriber.messages.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, subscriber.messages.size());
+    }
+
+    /**
+     * remembers received messages
+     */
+    private static class TestSubscriber implements Flow.Subscriber<Message> {
+
+        private final List<Message> messages = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Message item) {
+            messages.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+    }
+
+}
@@ -1,15 +1,44 @@
 package ru.redisMessenger.application.service;
 
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import lombok.extern.log4j.Log4j2;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
+import redis.clients.jedis.Jedis;
 import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.server.EmbeddedRedis;
+import ru.redisMessenger.application.util.Configuration;
 import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.LuaScript;
+import ru.redisMessenger.application.util.MessageArchive;
+import ru.redisMessenger.application.util.SubscriptionManager;
 import ru.redisMessenger.core.entities.*;
+import ru.redisMessenger.core.util.BinaryMessageCodec;
+import ru.redisMessenger.core.util.BinaryUserCodec;
+import ru.redisMessenger.core.util.JsonCodec;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -19,13 +48,28 @@ import static org.junit.Assert.*;
 @Log4j2
 public class RedisMessengerServiceTest {
 
+    private static final EmbeddedRedis REDIS = new EmbeddedRedis();
+
     private RedisMessengerService service;
 
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        REDIS.start();
+    }
+
+    @AfterClass
+    public static void closeRedis() {
+        REDIS.close();
+    }
+
     @Before
     public void setUp() throws Exception {
         JedisClient.getInstance().deleteValuesByPattern("user*");
         JedisClient.getInstance().deleteValuesByPattern("message*");
         JedisClient.getInstance().deleteValuesByPattern("chat*");
+        JedisClient.getInstance().deleteValuesByPattern("hash*");
+        JedisClient.getInstance().deleteValuesByPattern("group*");
+        MessageArchive.getInstance().delete("messages:user:AdvancedUser:advancedUser:user:SuperUser:superUser");
 
         service = new RedisMessengerService();
 
@@ -41,6 +85,10 @@ public class RedisMessengerServiceTest {
         JedisClient.getInstance().deleteValuesByPattern("user*");
         JedisClient.getInstance().deleteValuesByPattern("message*");
         JedisClient.getInstance().deleteValuesByPattern("chat*");
+        JedisClient.getInstance().deleteValuesByPattern("hash*");
+        JedisClient.getInstance().deleteValuesByPattern("group*");
+        MessageArchive.getInstance().delete("messages:user:AdvancedUser:advancedUser:user:SuperUser:superUser");
+        UserCache.closeInstance();
     }
 
     @Test
@@ -57,6 +105,9 @@ public class RedisMessengerServiceTest {
         assertEquals(service.hashUserKey(userFromKey), "hash:user:AdvancedUser:fromUser");
         assertEquals(service.chatUserChannel(userToKey), "chat:user:SimpleUser:toUser");
         assertEquals(service.chatUsersChannel(userFromKey, userToKey), "chat:user:AdvancedUser:fromUser:user:SimpleUser:toUser");
+        assertEquals(service.conversationMessagesKey(userToKey, userFromKey), "messages:user:AdvancedUser:fromUser:user:SimpleUser:toUser");
+        assertEquals(service.conversationMessagesKey(userFromKey, userToKey), service.conversationMessagesKey(userToKey, userFromKey));
+        assertEquals(service.conversationChatChannel(userToKey, userFromKey), "chat:user:AdvancedUser:fromUser:user:SimpleUser:toUser");
     }
 
     @Test
@@ -89,6 +140,72 @@ public class RedisMessengerServiceTest {
         service.addUser(addedUser);
     }
 
+    @Test
+    public void addUsers() throws RedisMessengerException, IOException {
+        List<User> users = new ArrayList<>();
+        int countUsers = 2500;
+        for (int i = 0; i < countUsers; i++)
+            users.add(new SimpleUser("bulkUser".concat(String.valueOf(i))));
+        users.add(new SimpleUser("bulkUser0"));
+        users.add(new SuperUser("superUser"));
+        users.add(new SimpleUser());
+
+        long roundTrips = JedisClient.getInstance().getRoundTrips();
+        AddUsersResult result = service.addUsers(users);
+        //two round trips for each batch of 1000 users
+        assertEquals(6, JedisClient.getInstance().getRoundTrips() - roundTrips);
+        assertEquals(countUsers, result.getAddedUserKeys().size());
+        assertEquals(3, result.getConflicts().size());
+        assertEquals("user is duplicated", result.getConflicts().get("user:SimpleUser:bulkUser0"));
+        assertEquals("user already exists", result.getConflicts().get("user:SuperUser:superUser"));
+        assertEquals("username must be filled", result.getConflicts().get("user:SimpleUser:null"));
+        assertEquals(SimpleUser.class, service.getUser("user:SimpleUser:bulkUser2499").getClass());
+        assertTrue(service.getUsersKeys().containsAll(result.getAddedUserKeys()));
+    }
+
+    @Test
+    public void broadcast() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        List<User> recipients = new ArrayList<>();
+        int countRecipients = 2500;
+        for (int i = 0; i < countRecipients; i++)
+            recipients.add(new SimpleUser("bulkUser".concat(String.valueOf(i))));
+        service.addUsers(recipients);
+        recipients.add(new SimpleUser("unknownUser"));
+        recipients.add(new SimpleUser("bulkUser0"));
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setText("announcement");
+        long roundTrips = JedisClient.getInstance().getRoundTrips();
+        BroadcastResult result = service.broadcast(message, recipients);
+        //one pipeline for each batch of 1000 recipients
+        assertEquals(3, JedisClient.getInstance().getRoundTrips() - roundTrips);
+        assertEquals(countRecipients + 1, result.getStatuses().size());
+        assertEquals(countRecipients, result.getCount(BroadcastResult.Status.DELIVERED));
+        assertEquals(BroadcastResult.Status.USER_NOT_FOUND, result.getStatuses().get("user:SimpleUser:unknownUser"));
+
+        Set<String> messages = service.getMessages(service.getUser("user:SimpleUser:bulkUser2499"), superUser);
+        assertEquals(1, messages.size());
+        assertTrue(messages.iterator().next().contains("announcement"));
+    }
+
+    @Test
+    public void broadcastAfterScriptFlush() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        try (Jedis jedis = new Jedis(Configuration.getInstance().getProperty(Configuration.Property.REDIS_HOST.getPropertyName()),
+                Integer.parseInt(Configuration.getInstance().getProperty(Configuration.Property.REDIS_PORT.getPropertyName())))) {
+            jedis.scriptFlush();
+        }
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setText("announcement");
+        BroadcastResult result = service.broadcast(message, Arrays.asList(superUser, advancedUser));
+        assertEquals(2, result.getCount(BroadcastResult.Status.DELIVERED));
+    }
+
     @Test(expected = RedisMessengerException.class)
     public void userAlreadyExists() throws RedisMessengerException, IOException{
         User addedUser = new SimpleUser("addedUser");
@@ -115,4 +232,495 @@ public class RedisMessengerServiceTest {
         assertArrayEquals(sentMessages.toArray(), receivedMessages.toArray());
     }
 
-}
\ No newline at end of file
+    @Test
+    //before pipelining a new conversation cost 11 round trips and an existing one 5, after pipelining 2
+    public void sendMessageRoundTrips() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+
+        //script is loaded to server by first call
+        Message warmUp = new Message();
+        warmUp.setFrom(superUser);
+        warmUp.setTo(superUser);
+        warmUp.setText("warm up");
+        service.sendMessage(warmUp);
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("hello!!!");
+        long roundTrips = JedisClient.getInstance().getRoundTrips();
+        service.sendMessage(message);
+        long newConversationRoundTrips = JedisClient.getInstance().getRoundTrips() - roundTrips;
+
+        roundTrips = JedisClient.getInstance().getRoundTrips();
+        service.sendMessage(message);
+        long existingConversationRoundTrips = JedisClient.getInstance().getRoundTrips() - roundTrips;
+
+        Message answer = new Message();
+        answer.setFrom(advancedUser);
+        answer.setTo(superUser);
+        answer.setText("zdarova!!!");
+        roundTrips = JedisClient.getInstance().getRoundTrips();
+        service.sendMessage(answer);
+        long answerRoundTrips = JedisClient.getInstance().getRoundTrips() - roundTrips;
+
+        assertEquals(1L, newConversationRoundTrips);
+        assertEquals(1L, existingConversationRoundTrips);
+        assertEquals(1L, answerRoundTrips);
+    }
+
+    @Test
+    public void equalMessagesOfOneMillisecondAreStored() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("hello!!!");
+        //several sends fall into the same millisecond, every sent message has its own id
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 50; i++)
+            ids.add(service.sendMessage(message).getId());
+        assertEquals(50, ids.size());
+        assertEquals(50, service.getMessages(superUser, advancedUser).size());
+    }
+
+    @Test
+    public void concurrentFirstMessages() throws Exception {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("hello!!!");
+        Message answer = new Message();
+        answer.setFrom(advancedUser);
+        answer.setTo(superUser);
+        answer.setText("zdarova!!!");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<Message> sent = executor.submit(() -> {
+            start.await();
+            return service.sendMessage(message);
+        });
+        Future<Message> answered = executor.submit(() -> {
+            start.await();
+            return service.sendMessage(answer);
+        });
+        start.countDown();
+        sent.get();
+        answered.get();
+        executor.shutdown();
+
+        assertEquals(2, service.getMessages(superUser, advancedUser).size());
+        assertEquals(2, service.getMessages(advancedUser, superUser).size());
+    }
+
+    @Test
+    public void readValuesInAllFormats() throws RedisMessengerException, IOException {
+        User binaryUser = new SimpleUser("binaryUser");
+        binaryUser.setDateCreate(new Date());
+        String binaryUserKey = service.userKey(binaryUser);
+        JedisClient.getInstance().setValue(binaryUserKey, new BinaryUserCodec().encode(binaryUser));
+        User superUser = service.getUser("user:SuperUser:superUser");
+        assertEquals(SimpleUser.class, service.getUser(binaryUserKey).getClass());
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(binaryUser);
+        message.setText("hello!!!");
+        message.setDateCreate(new Date());
+        //message stored in binary format by another process
+        JedisClient.getInstance().evalBinaryScript(LuaScript.SEND_MESSAGE,
+                Arrays.asList(binaryUserKey, service.conversationMessagesKey(service.userKey(superUser), binaryUserKey)),
+                Arrays.asList(service.conversationChatChannel(service.userKey(superUser), binaryUserKey).getBytes(StandardCharsets.UTF_8),
+                        new BinaryMessageCodec().encode(message), String.valueOf(message.getDateCreate().getTime()).getBytes(StandardCharsets.UTF_8)));
+        message.setText("zdarova!!!");
+        service.sendMessage(message);
+
+        Set<String> messages = service.getMessages(superUser, binaryUser);
+        assertEquals(2, messages.size());
+        for (String storedMessage : messages)
+            assertTrue(storedMessage.startsWith("{\"Message\":"));
+    }
+
+    @Test
+    public void migrateConversations() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        String superUserKey = service.userKey(superUser);
+        String advancedUserKey = service.userKey(advancedUser);
+
+        //conversation started by super user in old layout
+        String oldMessagesKey = service.messagesUsersKey(superUserKey, advancedUserKey);
+        JedisClient.getInstance().createHashValue(service.hashUserKey(superUserKey), service.messagesUserKey(advancedUserKey), oldMessagesKey);
+        JedisClient.getInstance().createHashValue(service.hashUserKey(advancedUserKey), service.messagesUserKey(superUserKey), oldMessagesKey);
+        JedisClient.getInstance().putValues(oldMessagesKey, new String[]{"first", "second", "third"});
+
+        assertEquals(1L, service.migrateConversations());
+        assertEquals(3, service.getMessages(superUser, advancedUser).size());
+        assertTrue(JedisClient.getInstance().getValues(oldMessagesKey).isEmpty());
+        assertTrue(JedisClient.getInstance().getKeys("hash*").isEmpty());
+        assertEquals(0L, service.migrateConversations());
+    }
+
+    @Test
+    public void migrateUnorderedConversation() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        String messagesKey = service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser));
+
+        //conversation stored by canonical key in unordered set
+        JedisClient.getInstance().putValues(messagesKey, new String[]{"first", "second"});
+
+        assertEquals(1L, service.migrateConversations());
+        assertEquals("zset", JedisClient.getInstance().getType(messagesKey));
+        assertEquals(2, service.getMessages(superUser, advancedUser).size());
+        assertEquals(0L, service.migrateConversations());
+    }
+
+    @Test
+    public void unorderedConversationIsConvertedOnFirstCall() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        String messagesKey = service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser));
+
+        //conversation of previous version, command "migrate conversations" wasn't run
+        JedisClient.getInstance().putValues(messagesKey, new String[]{"first", "second"});
+        assertEquals(2, service.getMessages(superUser, advancedUser, null, 10).getMessages().size());
+        assertEquals("zset", JedisClient.getInstance().getType(messagesKey));
+
+        JedisClient.getInstance().deleteValuesByKey(messagesKey);
+        JedisClient.getInstance().putValues(messagesKey, new String[]{"first", "second"});
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("third");
+        service.sendMessage(message);
+        assertEquals(3, service.getMessages(superUser, advancedUser).size());
+    }
+
+    @Test
+    public void migrateAfternoonMessages() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        String messagesKey = service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser));
+        JsonCodec<Message> jsonCodec = new JsonCodec<>(new SimpleFilterProvider()
+                .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept("messages", "description", "dateCreate", "rights"))
+                .addFilter("Message", SimpleBeanPropertyFilter.serializeAll()), Message.class);
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, Calendar.APRIL, 23, 10, 0, 0);
+        Message morningMessage = new Message();
+        morningMessage.setFrom(superUser);
+        morningMessage.setTo(advancedUser);
+        morningMessage.setText("morning");
+        morningMessage.setDateCreate(calendar.getTime());
+        calendar.set(Calendar.HOUR_OF_DAY, 14);
+        Message afternoonMessage = new Message();
+        afternoonMessage.setFrom(advancedUser);
+        afternoonMessage.setTo(superUser);
+        afternoonMessage.setText("afternoon");
+        afternoonMessage.setDateCreate(calendar.getTime());
+
+        //json conversation in unordered set, the afternoon message was sent at 14:00
+        JedisClient.getInstance().putValues(messagesKey, new String[]{
+                new String(jsonCodec.encode(afternoonMessage), StandardCharsets.UTF_8),
+                new String(jsonCodec.encode(morningMessage), StandardCharsets.UTF_8)});
+
+        assertEquals(1L, service.migrateConversations());
+        List<String> messages = new ArrayList<>(service.getMessages(superUser, advancedUser));
+        assertEquals(2, messages.size());
+        assertTrue(messages.get(0).contains("\"morning\""));
+        assertTrue(messages.get(1).contains("\"afternoon\""));
+        assertEquals(afternoonMessage.getDateCreate(), jsonCodec.decode(messages.get(1).getBytes(StandardCharsets.UTF_8)).getDateCreate());
+    }
+
+    @Test
+    public void pagedMessages() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        //messages sent in one millisecond share the same time, pages must not lose or repeat them
+        for (int i = 0; i < 5; i++) {
+            message.setText("hello ".concat(String.valueOf(i)));
+            service.sendMessage(message);
+        }
+
+        List<String> pagedMessages = new ArrayList<>();
+        String cursor = null;
+        int countPages = 0;
+        do {
+            MessagesPage page = service.getMessages(advancedUser, superUser, cursor, 2);
+            assertTrue(page.getMessages().size() <= 2);
+            pagedMessages.addAll(page.getMessages());
+            cursor = page.getNextCursor();
+            countPages++;
+        } while (cursor != null);
+
+        assertEquals(3, countPages);
+        List<String> allMessages = new ArrayList<>(service.getMessages(superUser, advancedUser));
+        Collections.reverse(allMessages);
+        assertEquals(allMessages, pagedMessages);
+        assertTrue(pagedMessages.get(0).contains("hello 4"));
+    }
+
+    @Test
+    public void iterateMessages() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        for (int i = 0; i < 5; i++) {
+            message.setText("hello ".concat(String.valueOf(i)));
+            service.sendMessage(message);
+        }
+
+        Iterator<List<String>> pages = service.iterateMessages(superUser, advancedUser, 2);
+        int countMessages = 0;
+        while (pages.hasNext())
+            countMessages += pages.next().size();
+        assertEquals(5, countMessages);
+    }
+
+    @Test
+    public void subscribeWithoutBlocking() throws Exception {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        SubscriptionManager.Subscription subscription = service.subscribe(advancedUser, superUser, received::add);
+
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("hello!!!");
+        service.sendMessage(message);
+
+        Message receivedMessage = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(receivedMessage);
+        assertEquals("hello!!!", receivedMessage.getText());
+        //users are resolved by keys stored in message
+        assertEquals(superUser.getDateCreate(), receivedMessage.getFrom().getDateCreate());
+        subscription.unsubscribe();
+    }
+
+    @Test
+    public void normalizedMessage() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("hello!!!");
+        System.setProperty(Configuration.Property.REDIS_VALUE_CODEC.getPropertyName(), "binary");
+        try {
+            new RedisMessengerService().sendMessage(message);
+        } finally {
+            System.clearProperty(Configuration.Property.REDIS_VALUE_CODEC.getPropertyName());
+        }
+
+        byte[] storedMessage = JedisClient.getInstance().getSortedBinaryValues(
+                service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser))).iterator().next();
+        byte[] jsonMessage = new JsonCodec<>(new SimpleFilterProvider()
+                .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept("messages", "description", "dateCreate", "rights"))
+                .addFilter("Message", SimpleBeanPropertyFilter.serializeAll()), Message.class).encode(message);
+        log.info("bytes per message: json {}, normalized {}", jsonMessage.length, storedMessage.length);
+        assertTrue(new BinaryMessageCodec().canDecode(storedMessage));
+        assertTrue(storedMessage.length * 3 < jsonMessage.length);
+    }
+
+    @Test
+    public void normalizedMessageKeepsConfiguredFormat() throws RedisMessengerException, IOException, InterruptedException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        String chatChannel = service.conversationChatChannel(service.userKey(superUser), service.userKey(advancedUser));
+        BlockingQueue<byte[]> published = new LinkedBlockingQueue<>();
+        SubscriptionManager.Subscription subscription = SubscriptionManager.getInstance().subscribe(chatChannel,
+                (channel, value) -> published.add(value));
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("hello!!!");
+        service.sendMessage(message);
+
+        //json of config.properties is kept for consumers of chat channels, users are written only by type and name
+        String publishedMessage = new String(published.poll(5, TimeUnit.SECONDS), StandardCharsets.UTF_8);
+        subscription.unsubscribe();
+        assertTrue(publishedMessage.startsWith("{"));
+        assertTrue(publishedMessage.contains("\"name\":\"superUser\""));
+        assertFalse(publishedMessage.contains("rights"));
+    }
+
+    @Test(expected = RedisMessengerException.class)
+    public void incorrectCursor() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        service.getMessages(superUser, advancedUser, "cursor", 2);
+    }
+
+    @Test
+    public void groupConversation() throws Exception {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        List<User> members = new ArrayList<>();
+        members.add(advancedUser);
+        for (int i = 0; i < 1500; i++)
+            members.add(new SimpleUser("member".concat(String.valueOf(i))));
+        service.createGroup(new Group("team"), superUser, members);
+
+        Group group = service.getGroup("team");
+        assertEquals("user:SuperUser:superUser", group.getOwnerKey());
+        assertTrue(service.isGroupMember(group, superUser));
+        assertTrue(service.isGroupMember(group, new SimpleUser("member1499")));
+
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        SubscriptionManager.Subscription subscription = service.subscribeGroup(group, advancedUser, received::add);
+        for (int i = 0; i < 3; i++) {
+            Message message = new Message();
+            message.setFrom(i % 2 == 0 ? superUser : advancedUser);
+            message.setText("group message ".concat(String.valueOf(i)));
+            long roundTrips = JedisClient.getInstance().getRoundTrips();
+            service.sendGroupMessage(group, message);
+            //one script call whatever the size of group, script is loaded by the first call when it isn't cached by redis
+            if (i > 0)
+                assertEquals(1, JedisClient.getInstance().getRoundTrips() - roundTrips);
+            //listener reads users of message, so the next send is measured after it is received
+            assertEquals("group message ".concat(String.valueOf(i)), received.poll(5, TimeUnit.SECONDS).getText());
+        }
+        subscription.unsubscribe();
+
+        MessagesPage page = service.getGroupMessages(group, new SimpleUser("member7"), null, 2);
+        assertEquals(2, page.getMessages().size());
+        assertTrue(page.getMessages().get(0).contains("group message 2"));
+        page = service.getGroupMessages(group, advancedUser, page.getNextCursor(), 2);
+        assertEquals(1, page.getMessages().size());
+        assertTrue(page.getMessages().get(0).contains("group message 0"));
+        assertFalse(page.hasNext());
+
+        service.removeGroupMembers(group, Collections.singletonList(advancedUser));
+        assertFalse(service.isGroupMember(group, advancedUser));
+    }
+
+    @Test(expected = RedisMessengerException.class)
+    public void groupAlreadyExists() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        service.createGroup(new Group("team"), superUser, Collections.emptyList());
+        service.createGroup(new Group("team"), superUser, Collections.emptyList());
+    }
+
+    @Test(expected = RedisMessengerException.class)
+    public void notMemberCannotSendGroupMessage() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        service.createGroup(new Group("team"), superUser, Collections.emptyList());
+
+        Message message = new Message();
+        message.setFrom(service.getUser("user:AdvancedUser:advancedUser"));
+        message.setText("intruder");
+        service.sendGroupMessage(service.getGroup("team"), message);
+    }
+
+    @Test(expected = RedisMessengerException.class)
+    public void notMemberCannotReadGroupMessages() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        service.createGroup(new Group("team"), superUser, Collections.emptyList());
+        service.getGroupMessages(service.getGroup("team"), service.getUser("user:AdvancedUser:advancedUser"), null, 10);
+    }
+
+    @Test
+    public void archivedMessages() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        for (int i = 0; i < 5; i++) {
+            Message message = new Message();
+            message.setFrom(superUser);
+            message.setTo(advancedUser);
+            message.setText("old message ".concat(String.valueOf(i)));
+            service.sendMessage(message);
+        }
+        List<String> messagesBeforeArchiving = new ArrayList<>(service.getMessages(superUser, advancedUser));
+        assertEquals(5, service.archiveMessages(new Date(System.currentTimeMillis() + 1)));
+        String messagesKey = service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser));
+        assertTrue(JedisClient.getInstance().getSortedBinaryValues(messagesKey).isEmpty());
+        assertEquals(messagesBeforeArchiving, new ArrayList<>(service.getMessages(superUser, advancedUser)));
+
+        Message message = new Message();
+        message.setFrom(advancedUser);
+        message.setTo(superUser);
+        message.setText("new message");
+        service.sendMessage(message);
+
+        //pages go from redis to archive
+        List<String> pagedMessages = new ArrayList<>();
+        MessagesPage page = service.getMessages(superUser, advancedUser, null, 4);
+        pagedMessages.addAll(page.getMessages());
+        while (page.hasNext()) {
+            page = service.getMessages(superUser, advancedUser, page.getNextCursor(), 4);
+            pagedMessages.addAll(page.getMessages());
+        }
+        assertEquals(6, pagedMessages.size());
+        assertTrue(pagedMessages.get(0).contains("new message"));
+        assertEquals(6, new HashSet<>(pagedMessages).size());
+    }
+
+    @Test
+    public void messagesOfOneMillisecondArchivedByFailedRun() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        String messagesKey = service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser));
+        //messages with equal time go over boundaries of pages
+        JedisClient.getInstance().transaction(transaction -> {
+            for (int i = 0; i < 5; i++)
+                transaction.zadd(messagesKey, 1000, "message ".concat(String.valueOf(i)));
+        });
+        MessageArchive.getInstance().append(messagesKey, JedisClient.getInstance().getSortedBinaryValuesBefore(messagesKey, Long.MAX_VALUE, 100));
+
+        List<String> pagedMessages = new ArrayList<>();
+        MessagesPage page = service.getMessages(superUser, advancedUser, null, 2);
+        pagedMessages.addAll(page.getMessages());
+        while (page.hasNext()) {
+            page = service.getMessages(superUser, advancedUser, page.getNextCursor(), 2);
+            pagedMessages.addAll(page.getMessages());
+        }
+        assertEquals(5, pagedMessages.size());
+        assertEquals(5, new HashSet<>(pagedMessages).size());
+    }
+
+    @Test
+    public void messagesArchivedByFailedRun() throws RedisMessengerException, IOException {
+        User superUser = service.getUser("user:SuperUser:superUser");
+        User advancedUser = service.getUser("user:AdvancedUser:advancedUser");
+        for (int i = 0; i < 5; i++) {
+            Message message = new Message();
+            message.setFrom(superUser);
+            message.setTo(advancedUser);
+            message.setText("message ".concat(String.valueOf(i)));
+            service.sendMessage(message);
+        }
+        String messagesKey = service.conversationMessagesKey(service.userKey(superUser), service.userKey(advancedUser));
+        //segment is written, but the run fails before messages are removed from redis
+        MessageArchive.getInstance().append(messagesKey, JedisClient.getInstance().getSortedBinaryValuesBefore(messagesKey, Long.MAX_VALUE, 100));
+
+        List<String> pagedMessages = new ArrayList<>();
+        MessagesPage page = service.getMessages(superUser, advancedUser, null, 3);
+        pagedMessages.addAll(page.getMessages());
+        while (page.hasNext()) {
+            page = service.getMessages(superUser, advancedUser, page.getNextCursor(), 3);
+            pagedMessages.addAll(page.getMessages());
+        }
+        assertEquals(5, pagedMessages.size());
+        assertEquals(5, new HashSet<>(pagedMessages).size());
+
+        //the next run removes messages from redis without archiving them again
+        service.archiveMessages(new Date(System.currentTimeMillis() + 1));
+        assertTrue(JedisClient.getInstance().getSortedBinaryValues(messagesKey).isEmpty());
+        assertEquals(5, MessageArchive.getInstance().read(messagesKey).size());
+        assertEquals(5, service.getMessages(superUser, advancedUser, null, 10).getMessages().size());
+    }
+
+}
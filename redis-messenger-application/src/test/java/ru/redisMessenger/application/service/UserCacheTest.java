@@ -0,0 +1,97 @@
+package ru.redisMessenger.application.service;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.server.EmbeddedRedis;
+import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.SubscriptionManager;
+import ru.redisMessenger.core.entities.SimpleUser;
+import ru.redisMessenger.core.entities.User;
+import ru.redisMessenger.core.util.BinaryUserCodec;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link UserCache}
+ */
+public class UserCacheTest {
+
+    private static final String USER_KEY = "user:SimpleUser:cachedUser";
+    private static final EmbeddedRedis REDIS = new EmbeddedRedis();
+
+    private RedisMessengerService service;
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        REDIS.start();
+    }
+
+    @AfterClass
+    public static void closeRedis() {
+        REDIS.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        JedisClient.getInstance().deleteValuesByPattern(USER_KEY);
+        service = new RedisMessengerService();
+        //listeners of channel are called in order, cache has received invalidation when this listener receives it
+        CountDownLatch invalidated = new CountDownLatch(1);
+        SubscriptionManager.Subscription subscription = SubscriptionManager.getInstance().subscribe(
+                Configuration.getInstance().getProperty(Configuration.Property.REDIS_CHANNEL_USER_INVALIDATION.getPropertyName()),
+                (channel, userKey) -> invalidated.countDown());
+        service.addUser(new SimpleUser("cachedUser"));
+        invalidated.await(5, TimeUnit.SECONDS);
+        subscription.unsubscribe();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JedisClient.getInstance().deleteValuesByPattern(USER_KEY);
+        UserCache.closeInstance();
+    }
+
+    @Test
+    public void repeatedLookupWithoutNetwork() throws Exception {
+        User user = service.getUser(USER_KEY);
+        long roundTrips = JedisClient.getInstance().getRoundTrips();
+        for (int i = 0; i < 100; i++)
+            assertSame(user, service.getUser(USER_KEY));
+        assertEquals(roundTrips, JedisClient.getInstance().getRoundTrips());
+    }
+
+    @Test(expected = RedisMessengerException.class)
+    public void deletedUserIsInvalidated() throws Exception {
+        User user = service.getUser(USER_KEY);
+        service.deleteUser(user);
+        service.getUser(USER_KEY);
+    }
+
+    @Test
+    public void invalidationFromOtherProcess() throws Exception {
+        User user = service.getUser(USER_KEY);
+
+        //another process changes user and publishes invalidation
+        User changedUser = new SimpleUser("cachedUser");
+        changedUser.setDateCreate(new Date(user.getDateCreate().getTime() + 1000));
+        JedisClient.getInstance().setValue(USER_KEY, new BinaryUserCodec().encode(changedUser));
+        String channel = Configuration.getInstance().getProperty(Configuration.Property.REDIS_CHANNEL_USER_INVALIDATION.getPropertyName());
+        JedisClient.getInstance().publish(channel, USER_KEY);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.getUser(USER_KEY) == user && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(changedUser.getDateCreate(), service.getUser(USER_KEY).getDateCreate());
+    }
+
+}
@@ -20,4 +20,14 @@ public class ConfigurationTest {
         assertNotNull(Configuration.getInstance().getProperty("file.output.directory"));
     }
 
+    @Test
+    public void systemPropertyOverridesParameter() throws RedisMessengerException {
+        System.setProperty("file.output.directory", "overridden");
+        try {
+            assertEquals("overridden", Configuration.getInstance().getProperty("file.output.directory"));
+        } finally {
+            System.clearProperty("file.output.directory");
+        }
+    }
+
 }
\ No newline at end of file
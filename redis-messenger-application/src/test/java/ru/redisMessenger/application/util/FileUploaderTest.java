@@ -2,11 +2,19 @@ package ru.redisMessenger.application.util;
 
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.InvalidPathException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.*;
 
@@ -28,6 +36,24 @@ public class FileUploaderTest {
         assertTrue(deleteStatus);
     }
 
+    @Test
+    public void uploadChunks() throws IOException {
+        String filePath = Configuration.getInstance().getProperty(Configuration.Property.FILE_OUTPUT_DIRECTORY.getPropertyName());
+        filePath = filePath.concat("chunks.txt.gz");
+        List<List<String>> chunks = new ArrayList<>();
+        chunks.add(Arrays.asList("qwe", "rty"));
+        chunks.add(Collections.singletonList("uio"));
+        UploadStatistics statistics = new FileUploader().writeLines(filePath, chunks.iterator(), true);
+        assertEquals(3, statistics.getLines());
+        assertEquals(new File(filePath).length(), statistics.getBytes());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(filePath)), StandardCharsets.UTF_8))) {
+            assertEquals(Arrays.asList("qwe", "rty", "uio"), reader.lines().collect(Collectors.toList()));
+        }
+        boolean deleteStatus = new File(filePath).delete();
+        assertTrue(deleteStatus);
+    }
+
     @Test(expected = InvalidPathException.class)
     public void uploadException() throws IOException, InvalidPathException {
         String filePath = "***";
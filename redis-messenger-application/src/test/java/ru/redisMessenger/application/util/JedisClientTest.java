@@ -0,0 +1,72 @@
+package ru.redisMessenger.application.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link JedisClient}
+ */
+public class JedisClientTest {
+
+    private static final String TEST_KEY_PREFIX = "jedisClientTest";
+
+    @After
+    public void tearDown() throws Exception {
+        JedisClient.getInstance().deleteValuesByPattern(TEST_KEY_PREFIX.concat("*"));
+    }
+
+    @Test
+    public void sameInstanceFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<JedisClient>> instances = new ArrayList<>();
+        for (int i = 0; i < 32; i++)
+            instances.add(executor.submit(JedisClient::getInstance));
+        for (Future<JedisClient> instance : instances)
+            assertSame(JedisClient.getInstance(), instance.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void concurrentSetAndGet() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String key = String.join(":", TEST_KEY_PREFIX, String.valueOf(i));
+            String value = "value".concat(String.valueOf(i));
+            Callable<Boolean> task = () -> {
+                JedisClient.getInstance().setValue(key, value);
+                return value.equals(JedisClient.getInstance().getValue(key));
+            };
+            results.add(executor.submit(task));
+        }
+        for (Future<Boolean> result : results)
+            assertTrue(result.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void deleteValuesByPatternInBatches() throws Exception {
+        int countKeys = 1000;
+        JedisClient.getInstance().pipelined(pipeline -> {
+            for (int i = 0; i < countKeys; i++)
+                pipeline.set(String.join(":", TEST_KEY_PREFIX, String.valueOf(i)), "value");
+        });
+        assertEquals(countKeys, JedisClient.getInstance().getKeys(TEST_KEY_PREFIX.concat("*")).size());
+
+        long roundTrips = JedisClient.getInstance().getRoundTrips();
+        assertEquals(countKeys, JedisClient.getInstance().deleteValuesByPattern(TEST_KEY_PREFIX.concat("*")));
+        //one SCAN and at most one DEL for each batch instead of one DEL for each key
+        assertTrue(JedisClient.getInstance().getRoundTrips() - roundTrips < countKeys / 5);
+        assertTrue(JedisClient.getInstance().getKeys(TEST_KEY_PREFIX.concat("*")).isEmpty());
+    }
+
+}
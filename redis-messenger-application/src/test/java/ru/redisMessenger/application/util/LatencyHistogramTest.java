@@ -0,0 +1,41 @@
+package ru.redisMessenger.application.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++)
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        assertEquals(100000, histogram.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100000), histogram.getMax());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(50000), histogram.getValueAtPercentile(50), TimeUnit.MICROSECONDS.toNanos(500));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(99000), histogram.getValueAtPercentile(99), TimeUnit.MICROSECONDS.toNanos(990));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(99900), histogram.getValueAtPercentile(99.9), TimeUnit.MICROSECONDS.toNanos(999));
+        assertTrue(histogram.getValueAtPercentile(99.9) >= TimeUnit.MICROSECONDS.toNanos(99900));
+        assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(50000) + 500, histogram.getMean(), 1);
+    }
+
+    @Test
+    public void smallAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(-1);
+        histogram.record(100);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getValueAtPercentile(10));
+        assertEquals(100, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+}
@@ -0,0 +1,89 @@
+package ru.redisMessenger.application.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Tuple;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link MessageArchive}
+ */
+public class MessageArchiveTest {
+
+    private static final String KEY = "messages:archive:test";
+
+    @Before
+    public void setUp() throws IOException {
+        MessageArchive.getInstance().delete(KEY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MessageArchive.getInstance().delete(KEY);
+    }
+
+    @Test
+    public void readPages() throws IOException {
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("a", 1), value("b", 2), value("c", 2)));
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("d", 3), value("e", 4)));
+        //segment with older values archived later
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("f", 0), value("g", 2)));
+
+        assertEquals(Arrays.asList("e", "d"), elements(MessageArchive.getInstance().read(KEY, Double.POSITIVE_INFINITY, 0, 2)));
+        List<String> equalScores = elements(MessageArchive.getInstance().read(KEY, 2, 0, 2));
+        assertEquals(2, equalScores.size());
+        //values with score equal to maxScore returned by previous page are skipped
+        List<String> nextPage = elements(MessageArchive.getInstance().read(KEY, 2, 2, 10));
+        assertEquals(3, nextPage.size());
+        assertEquals(Arrays.asList("a", "f"), nextPage.subList(1, 3));
+        assertEquals(7, MessageArchive.getInstance().read(KEY).size());
+        assertEquals("f", elements(MessageArchive.getInstance().read(KEY)).get(0));
+    }
+
+    @Test
+    public void archivedValuesAreSkipped() throws IOException {
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("a", 1), value("b", 2)));
+        //the same values are archived again after failure, with one new value
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("a", 1), value("b", 2), value("c", 2)));
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("a", 1), value("b", 2)));
+        assertEquals(Arrays.asList("a", "b", "c"), elements(MessageArchive.getInstance().read(KEY)));
+    }
+
+    @Test
+    public void segmentWithoutIndexIsNotReplaced() throws IOException {
+        //segment written by failed run before its index line
+        Path keyDirectory = Files.createDirectories(Configuration.getInstance()
+                .getPath(Configuration.Property.MESSAGE_ARCHIVE_DIRECTORY.getPropertyName())
+                .resolve(URLEncoder.encode(KEY, StandardCharsets.UTF_8.name())));
+        Path orphanSegment = Files.write(keyDirectory.resolve("00000001.seg.gz"), "orphan".getBytes(StandardCharsets.UTF_8));
+
+        MessageArchive.getInstance().append(KEY, Arrays.asList(value("a", 1), value("b", 2)));
+        assertEquals("orphan", new String(Files.readAllBytes(orphanSegment), StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("a", "b"), elements(MessageArchive.getInstance().read(KEY)));
+    }
+
+    @Test
+    public void keyIsNotArchived() throws IOException {
+        assertTrue(MessageArchive.getInstance().read(KEY, Double.POSITIVE_INFINITY, 0, 10).isEmpty());
+    }
+
+    private static Tuple value(String element, double score) {
+        return new Tuple(element.getBytes(StandardCharsets.UTF_8), score);
+    }
+
+    private static List<String> elements(List<Tuple> values) {
+        return values.stream().map(Tuple::getElement).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,77 @@
+package ru.redisMessenger.application.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link MessageOutbox}
+ */
+public class MessageOutboxTest {
+
+    private static final String CONTACT_KEY = "outbox:test:contact";
+    private static final String MESSAGES_KEY = "outbox:test:messages";
+
+    @Before
+    public void setUp() {
+        JedisClient.getInstance().deleteValuesByPattern("outbox:test:*");
+        JedisClient.getInstance().setValue(CONTACT_KEY, "contact");
+    }
+
+    @After
+    public void tearDown() {
+        JedisClient.getInstance().deleteValuesByPattern("outbox:test:*");
+    }
+
+    @Test
+    public void replayInOrder() throws IOException {
+        for (int i = 0; i < 250; i++)
+            MessageOutbox.getInstance().append(LuaScript.SEND_MESSAGE, Arrays.asList(CONTACT_KEY, MESSAGES_KEY), args("message ".concat(String.valueOf(i)), i));
+        MessageOutbox.getInstance().drain();
+        assertEquals(0, MessageOutbox.getInstance().getPendingCalls());
+        assertEquals(250, JedisClient.getInstance().getSortedBinaryValues(MESSAGES_KEY).size());
+        assertEquals("message 249", SafeEncoder.encode(JedisClient.getInstance().getSortedBinaryValues(MESSAGES_KEY, Double.POSITIVE_INFINITY, 0, 1)
+                .iterator().next().getBinaryElement()));
+    }
+
+    @Test
+    public void replayIsDeduplicated() throws IOException {
+        List<byte[]> args = args("message", 1);
+        MessageOutbox.getInstance().append(LuaScript.SEND_MESSAGE, Arrays.asList(CONTACT_KEY, MESSAGES_KEY), args);
+        MessageOutbox.getInstance().drain();
+        //the same call is replayed again, e.g. after crash before offset was written
+        MessageOutbox.getInstance().append(LuaScript.SEND_MESSAGE, Arrays.asList(CONTACT_KEY, MESSAGES_KEY), args);
+        MessageOutbox.getInstance().drain();
+        assertEquals(1, JedisClient.getInstance().getSortedBinaryValues(MESSAGES_KEY).size());
+        assertEquals(0L, JedisClient.getInstance().evalBinaryScript(LuaScript.SEND_MESSAGE, Arrays.asList(CONTACT_KEY, MESSAGES_KEY), args));
+    }
+
+    @Test
+    public void outboxFileIsLocked() throws IOException {
+        MessageOutbox.getInstance();
+        //lock isn't lost when it is collected as garbage
+        System.gc();
+        try (FileChannel channel = FileChannel.open(Configuration.getInstance().getPath(Configuration.Property.MESSAGE_OUTBOX_DIRECTORY.getPropertyName())
+                .resolve("outbox"), StandardOpenOption.WRITE)) {
+            channel.tryLock();
+            fail("outbox file must be locked by outbox");
+        } catch (OverlappingFileLockException e) {
+            //another process gets null instead of exception
+        }
+    }
+
+    private static List<byte[]> args(String message, long score) {
+        return Arrays.asList(SafeEncoder.encode("outbox:test:channel"), SafeEncoder.encode(message), SafeEncoder.encode(String.valueOf(score)));
+    }
+
+}
@@ -0,0 +1,58 @@
+package ru.redisMessenger.application.util;
+
+import org.junit.After;
+import org.junit.Test;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.service.RedisMessengerService;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link Metrics}
+ */
+public class MetricsTest {
+
+    private static final String TEST_KEY_PREFIX = "metricsTest";
+
+    @After
+    public void tearDown() throws Exception {
+        JedisClient.getInstance().deleteValuesByPattern(TEST_KEY_PREFIX.concat("*"));
+    }
+
+    @Test
+    public void redisCommandIsExposedAsMBean() throws Exception {
+        OperationMetrics getMetrics = Metrics.getInstance().redisCommand("GET");
+        long count = getMetrics.getCount();
+        JedisClient.getInstance().setValue(TEST_KEY_PREFIX.concat(":key"), "value");
+        for (int i = 0; i < 10; i++)
+            assertEquals("value", JedisClient.getInstance().getValue(TEST_KEY_PREFIX.concat(":key")));
+        assertEquals(count + 10, getMetrics.getCount());
+        assertTrue(getMetrics.getMaxMicros() >= getMetrics.getP50Micros());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("ru.redisMessenger:type=RedisCommand,name=GET");
+        assertEquals(getMetrics.getCount(), server.getAttribute(name, "Count"));
+        assertEquals(0L, server.getAttribute(name, "Errors"));
+        assertTrue(Metrics.getInstance().dump().contains("GET"));
+    }
+
+    @Test
+    public void failedServiceOperationIsCounted() throws Exception {
+        OperationMetrics getUserMetrics = Metrics.getInstance().serviceOperation("getUser");
+        long count = getUserMetrics.getCount();
+        long errors = getUserMetrics.getErrors();
+        try {
+            new RedisMessengerService().getUser(TEST_KEY_PREFIX.concat(":unknownUser"));
+            fail("user doesn't exist");
+        } catch (RedisMessengerException e) {
+            assertEquals(count + 1, getUserMetrics.getCount());
+            assertEquals(errors + 1, getUserMetrics.getErrors());
+        }
+        assertSame(getUserMetrics, Metrics.getInstance().serviceOperation("getUser"));
+    }
+
+}
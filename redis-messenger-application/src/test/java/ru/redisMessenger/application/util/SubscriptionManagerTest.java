@@ -0,0 +1,76 @@
+package ru.redisMessenger.application.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link SubscriptionManager}
+ */
+public class SubscriptionManagerTest {
+
+    private static final String TEST_CHANNEL_PREFIX = "subscriptionManagerTest";
+
+    @Test
+    public void manyChannelsOverOneConnection() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        List<SubscriptionManager.Subscription> subscriptions = new ArrayList<>();
+        int countChannels = 100;
+        //channels of other subscribers of the process, e.g. invalidation channel of user cache
+        int countOtherChannels = SubscriptionManager.getInstance().getChannelsCount();
+        for (int i = 0; i < countChannels; i++)
+            subscriptions.add(SubscriptionManager.getInstance().subscribe(channel(i),
+                    (channel, message) -> received.add(channel.concat("=").concat(new String(message, StandardCharsets.UTF_8)))));
+        assertEquals(countOtherChannels + countChannels, SubscriptionManager.getInstance().getChannelsCount());
+
+        for (int i = 0; i < countChannels; i++)
+            assertEquals(Long.valueOf(1), JedisClient.getInstance().publish(channel(i), "message"));
+        for (int i = 0; i < countChannels; i++)
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, SubscriptionManager.getInstance().getQueueDepth());
+
+        subscriptions.forEach(SubscriptionManager.Subscription::unsubscribe);
+        assertEquals(countOtherChannels, SubscriptionManager.getInstance().getChannelsCount());
+        //UNSUBSCRIBE is sent without waiting for reply
+        long deadline = System.currentTimeMillis() + 5000;
+        while (JedisClient.getInstance().publish(channel(0), "message") > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(Long.valueOf(0), JedisClient.getInstance().publish(channel(0), "message"));
+    }
+
+    @Test
+    public void messagesOfChannelInOrder() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        SubscriptionManager.Subscription subscription = SubscriptionManager.getInstance().subscribe(channel(0),
+                (channel, message) -> received.add(new String(message, StandardCharsets.UTF_8)));
+        int countMessages = 500;
+        for (int i = 0; i < countMessages; i++)
+            JedisClient.getInstance().publish(channel(0), String.valueOf(i));
+        for (int i = 0; i < countMessages; i++)
+            assertEquals(String.valueOf(i), received.poll(5, TimeUnit.SECONDS));
+        subscription.unsubscribe();
+    }
+
+    @Test
+    public void closeStopsThreads() throws Exception {
+        SubscriptionManager manager = SubscriptionManager.getInstance();
+        manager.subscribe(channel(0), (channel, message) -> {});
+        assertTrue(manager.isRunning());
+        manager.close();
+        assertFalse(manager.isRunning());
+        assertEquals(Long.valueOf(0), JedisClient.getInstance().publish(channel(0), "message"));
+        assertNotSame(manager, SubscriptionManager.getInstance());
+    }
+
+    private String channel(int number) {
+        return String.join(":", TEST_CHANNEL_PREFIX, String.valueOf(number));
+    }
+
+}
@@ -0,0 +1,70 @@
+package ru.redisMessenger.application.server;
+
+import java.util.List;
+
+/**
+ * command of {@link RespServer}
+ */
+final class Command {
+
+    private final String name;
+    private final int arity;
+    private final boolean exclusive;
+    private final Handler handler;
+
+    /**
+     * constructor
+     * @param name {@link String} lower case name
+     * @param arity int count of arguments with name, negative value is the minimal count, like arity of redis commands
+     * @param exclusive boolean command runs alone, other commands wait until it finishes
+     * @param handler {@link Handler} executes command
+     */
+    Command(String name, int arity, boolean exclusive, Handler handler) {
+        this.name = name;
+        this.arity = arity;
+        this.exclusive = exclusive;
+        this.handler = handler;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isExclusive() {
+        return exclusive;
+    }
+
+    /**
+     * check count of arguments
+     * @param arguments {@link List} of byte[] name and arguments of command
+     */
+    void check(List<byte[]> arguments) {
+        if (arity > 0 ? arguments.size() != arity : arguments.size() < -arity)
+            throw new RespException("ERR wrong number of arguments for '".concat(name).concat("' command"));
+    }
+
+    /**
+     * check count of arguments and execute command
+     * @param arguments {@link List} of byte[] name and arguments of command
+     * @return reply
+     */
+    Object execute(List<byte[]> arguments) {
+        check(arguments);
+        return handler.execute(arguments);
+    }
+
+    /**
+     * implementation of command
+     */
+    @FunctionalInterface
+    interface Handler {
+
+        /**
+         * @param arguments {@link List} of byte[] name and arguments of command
+         * @return reply: {@link StatusReply}, {@link Long}, byte[], {@link List} of replies or null
+         */
+        Object execute(List<byte[]> arguments);
+
+    }
+
+}
@@ -0,0 +1,107 @@
+package ru.redisMessenger.application.server;
+
+import ru.redisMessenger.application.util.Configuration;
+import ru.redisMessenger.application.util.JedisClient;
+import ru.redisMessenger.application.util.LuaScript;
+import ru.redisMessenger.application.util.SubscriptionManager;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * {@link RespServer} on a free port with java implementations of {@link LuaScript} scripts of messenger
+ * while it is started, redis.host and redis.port point to it, so {@link JedisClient} and {@link SubscriptionManager}
+ * of the process connect to it instead of the configured redis, close restores them
+ * tests start it in @BeforeClass and close it in @AfterClass
+ */
+public class EmbeddedRedis {
+
+    private static final String HOST = "localhost";
+
+    private final RespServer server = new RespServer(HOST, 0);
+    private String previousHost;
+    private String previousPort;
+
+    /**
+     * default constructor
+     */
+    public EmbeddedRedis() {
+        server.registerScript(LuaScript.SEND_MESSAGE.getSource(), EmbeddedRedis::sendMessage);
+        server.registerScript(LuaScript.SEND_GROUP_MESSAGE.getSource(), EmbeddedRedis::sendGroupMessage);
+    }
+
+    /**
+     * start server and connect clients of the process to it
+     * @throws IOException when server isn't started
+     */
+    public void start() throws IOException {
+        server.start();
+        previousHost = System.getProperty(Configuration.Property.REDIS_HOST.getPropertyName());
+        previousPort = System.getProperty(Configuration.Property.REDIS_PORT.getPropertyName());
+        System.setProperty(Configuration.Property.REDIS_HOST.getPropertyName(), HOST);
+        System.setProperty(Configuration.Property.REDIS_PORT.getPropertyName(), String.valueOf(server.getPort()));
+        closeClients();
+    }
+
+    /**
+     * connect clients of the process to the configured redis again and stop server
+     */
+    public void close() {
+        restoreProperty(Configuration.Property.REDIS_HOST.getPropertyName(), previousHost);
+        restoreProperty(Configuration.Property.REDIS_PORT.getPropertyName(), previousPort);
+        closeClients();
+        server.close();
+    }
+
+    /**
+     * @return int listening port
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * clients are created again with current redis.host and redis.port by the next getInstance
+     */
+    private static void closeClients() {
+        SubscriptionManager.closeInstance();
+        JedisClient.closeInstance();
+    }
+
+    private static void restoreProperty(String propertyName, String value) {
+        if (value == null)
+            System.clearProperty(propertyName);
+        else
+            System.setProperty(propertyName, value);
+    }
+
+    /**
+     * send_message.lua
+     * @param redis {@link Script.Redis}
+     * @param keys {@link List} of byte[] contact user key, messages key of conversation
+     * @param args {@link List} of byte[] chat channel of conversation, message, time of message in millis
+     * @return reply of script
+     */
+    private static Object sendMessage(Script.Redis redis, List<byte[]> keys, List<byte[]> args) {
+        if ((Long) redis.call("EXISTS", keys.get(0)) == 0)
+            return false;
+        if ((Long) redis.call("ZADD", keys.get(1), args.get(2), args.get(1)) == 0)
+            return 0L;
+        return redis.call("PUBLISH", args.get(0), args.get(1));
+    }
+
+    /**
+     * send_group_message.lua
+     * @param redis {@link Script.Redis}
+     * @param keys {@link List} of byte[] members key of group, messages key of group
+     * @param args {@link List} of byte[] author user key, chat channel of group, message, time of message in millis
+     * @return reply of script
+     */
+    private static Object sendGroupMessage(Script.Redis redis, List<byte[]> keys, List<byte[]> args) {
+        if ((Long) redis.call("SISMEMBER", keys.get(0), args.get(0)) == 0)
+            return false;
+        redis.call("ZADD", keys.get(1), args.get(3), args.get(2));
+        return redis.call("PUBLISH", args.get(1), args.get(2));
+    }
+
+}
@@ -0,0 +1,67 @@
+package ru.redisMessenger.application.server;
+
+import java.util.regex.Pattern;
+
+/**
+ * glob-style pattern of KEYS, SCAN and PSUBSCRIBE: *, ?, [abc], [^abc], [a-z] and \ for escaping
+ */
+final class GlobPattern {
+
+    private final Pattern pattern;
+
+    /**
+     * constructor
+     * @param glob {@link String} pattern, every char is one byte
+     */
+    GlobPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                appendLiteral(regex, glob.charAt(++i));
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                int end = glob.indexOf(']', i + 1);
+                regex.append('[');
+                int j = i + 1;
+                if (glob.charAt(j) == '^') {
+                    regex.append('^');
+                    j++;
+                }
+                for (; j < end; j++) {
+                    if (glob.charAt(j) == '-' && j > i + 1 && j + 1 < end)
+                        regex.append('-');
+                    else
+                        appendLiteral(regex, glob.charAt(j));
+                }
+                regex.append(']');
+                i = end;
+            } else {
+                appendLiteral(regex, c);
+            }
+        }
+        pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * @param value {@link String} key or channel, every char is one byte
+     * @return boolean value matches pattern
+     */
+    boolean matches(String value) {
+        return pattern.matcher(value).matches();
+    }
+
+    /**
+     * @param regex {@link StringBuilder} regular expression
+     * @param c char which has no special meaning
+     */
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if (!Character.isLetterOrDigit(c))
+            regex.append('\\');
+        regex.append(c);
+    }
+
+}
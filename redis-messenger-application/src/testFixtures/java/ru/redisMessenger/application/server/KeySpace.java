@@ -0,0 +1,537 @@
+package ru.redisMessenger.application.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * keys and values of {@link RespServer} with commands of strings, keys, hashes, sets and sorted sets
+ * keys, fields and members are kept as strings with one char per byte (ISO-8859-1), so binary keys are safe
+ * and strings are compared like bytes, values of strings and hashes are kept as byte[]
+ * every change of key is done by {@link ConcurrentHashMap#compute}, so commands of different keys don't wait for each other
+ */
+final class KeySpace {
+
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    private final Map<String, Entry> keys = new ConcurrentHashMap<>();
+    //keys in order of creation, SCAN cursor is sequence of the last returned key, so removed keys don't shift cursor
+    private final ConcurrentNavigableMap<Long, String> keysOrder = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Command> commands = new HashMap<>();
+
+    /**
+     * default constructor
+     */
+    KeySpace() {
+        command("get", 2, false, this::get);
+        command("set", -3, false, this::set);
+        command("setnx", 3, false, this::setnx);
+        command("del", -2, true, this::del);
+        command("exists", -2, false, this::exists);
+        command("type", 2, false, this::type);
+        command("rename", 3, true, this::rename);
+        command("keys", 2, false, this::keys);
+        command("scan", -2, false, this::scan);
+        command("dbsize", 1, false, arguments -> (long) keys.size());
+        command("flushdb", 1, true, arguments -> flush());
+        command("flushall", 1, true, arguments -> flush());
+        command("hset", -4, false, this::hset);
+        command("hget", 3, false, this::hget);
+        command("hdel", -3, false, this::hdel);
+        command("hkeys", 2, false, this::hkeys);
+        command("hgetall", 2, false, this::hgetall);
+        command("hscan", -3, false, this::hscan);
+        command("sadd", -3, false, this::sadd);
+        command("srem", -3, false, this::srem);
+        command("smembers", 2, false, this::smembers);
+        command("sismember", 3, false, this::sismember);
+        command("scard", 2, false, arguments -> (long) read(string(arguments.get(1)), Set.class, Collections.emptySet()).size());
+        command("sscan", -3, false, this::sscan);
+        command("zadd", -4, false, this::zadd);
+        command("zrem", -3, false, this::zrem);
+        command("zcard", 2, false, arguments -> (long) read(string(arguments.get(1)), SortedSet.class, new SortedSet()).size());
+        command("zscore", 3, false, this::zscore);
+        command("zrange", -4, false, arguments -> zrange(arguments, false));
+        command("zrevrange", -4, false, arguments -> zrange(arguments, true));
+        command("zrangebyscore", -4, false, arguments -> zrangeByScore(arguments, false));
+        command("zrevrangebyscore", -4, false, arguments -> zrangeByScore(arguments, true));
+    }
+
+    /**
+     * @param name {@link String} lower case name of command
+     * @return {@link Command}, null when command isn't supported
+     */
+    Command getCommand(String name) {
+        return commands.get(name);
+    }
+
+    /**
+     * @param value byte[] binary value
+     * @return {@link String} one char per byte
+     */
+    static String string(byte[] value) {
+        return new String(value, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param value {@link String} one char per byte
+     * @return byte[] binary value
+     */
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private Object get(List<byte[]> arguments) {
+        return read(string(arguments.get(1)), byte[].class, null);
+    }
+
+    private Object set(List<byte[]> arguments) {
+        boolean ifAbsent = false;
+        boolean ifExists = false;
+        for (byte[] option : arguments.subList(3, arguments.size())) {
+            if ("nx".equalsIgnoreCase(string(option)))
+                ifAbsent = true;
+            else if ("xx".equalsIgnoreCase(string(option)))
+                ifExists = true;
+            else
+                throw new RespException("ERR syntax error");
+        }
+        boolean onlyIfAbsent = ifAbsent;
+        boolean onlyIfExists = ifExists;
+        boolean[] changed = new boolean[1];
+        keys.compute(string(arguments.get(1)), (key, entry) -> {
+            if (entry == null ? onlyIfExists : onlyIfAbsent)
+                return entry;
+            changed[0] = true;
+            return entry == null ? created(key, arguments.get(2)) : new Entry(entry.sequence, arguments.get(2));
+        });
+        return changed[0] ? StatusReply.OK : null;
+    }
+
+    private Object setnx(List<byte[]> arguments) {
+        boolean[] created = new boolean[1];
+        keys.computeIfAbsent(string(arguments.get(1)), key -> {
+            created[0] = true;
+            return created(key, arguments.get(2));
+        });
+        return created[0] ? 1L : 0L;
+    }
+
+    private Object del(List<byte[]> arguments) {
+        long deleted = 0;
+        for (byte[] key : arguments.subList(1, arguments.size()))
+            if (remove(string(key)))
+                deleted++;
+        return deleted;
+    }
+
+    private Object exists(List<byte[]> arguments) {
+        long existing = 0;
+        for (byte[] key : arguments.subList(1, arguments.size()))
+            if (keys.containsKey(string(key)))
+                existing++;
+        return existing;
+    }
+
+    private Object type(List<byte[]> arguments) {
+        Entry entry = keys.get(string(arguments.get(1)));
+        if (entry == null)
+            return new StatusReply("none");
+        if (entry.value instanceof byte[])
+            return new StatusReply("string");
+        if (entry.value instanceof Map)
+            return new StatusReply("hash");
+        if (entry.value instanceof Set)
+            return new StatusReply("set");
+        return new StatusReply("zset");
+    }
+
+    private Object rename(List<byte[]> arguments) {
+        String source = string(arguments.get(1));
+        String target = string(arguments.get(2));
+        Entry entry = keys.get(source);
+        if (entry == null)
+            throw new RespException("ERR no such key");
+        if (source.equals(target))
+            return StatusReply.OK;
+        remove(source);
+        remove(target);
+        keys.put(target, created(target, entry.value));
+        return StatusReply.OK;
+    }
+
+    private Object keys(List<byte[]> arguments) {
+        GlobPattern pattern = new GlobPattern(string(arguments.get(1)));
+        List<Object> matched = new ArrayList<>();
+        for (String key : keys.keySet())
+            if (pattern.matches(key))
+                matched.add(bytes(key));
+        return matched;
+    }
+
+    private Object scan(List<byte[]> arguments) {
+        long cursor = parseLong(arguments.get(1));
+        ScanOptions options = new ScanOptions(arguments, 2);
+        List<Object> matched = new ArrayList<>();
+        long nextCursor = cursor;
+        int examined = 0;
+        for (Map.Entry<Long, String> key : keysOrder.tailMap(cursor, false).entrySet()) {
+            if (options.matches(key.getValue()))
+                matched.add(bytes(key.getValue()));
+            nextCursor = key.getKey();
+            if (++examined == options.count)
+                break;
+        }
+        if (keysOrder.higherKey(nextCursor) == null)
+            nextCursor = 0;
+        return Arrays.asList(String.valueOf(nextCursor).getBytes(StandardCharsets.US_ASCII), matched);
+    }
+
+    private Object flush() {
+        keys.clear();
+        keysOrder.clear();
+        return StatusReply.OK;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object hset(List<byte[]> arguments) {
+        if (arguments.size() % 2 != 0)
+            throw new RespException("ERR wrong number of arguments for 'hset' command");
+        return write(string(arguments.get(1)), Map.class, ConcurrentHashMap::new, 0L, hash -> {
+            long created = 0;
+            for (int i = 2; i < arguments.size(); i += 2)
+                if (hash.put(string(arguments.get(i)), arguments.get(i + 1)) == null)
+                    created++;
+            return created;
+        });
+    }
+
+    private Object hget(List<byte[]> arguments) {
+        return read(string(arguments.get(1)), Map.class, Collections.emptyMap()).get(string(arguments.get(2)));
+    }
+
+    private Object hdel(List<byte[]> arguments) {
+        return write(string(arguments.get(1)), Map.class, null, 0L, hash -> {
+            long removed = 0;
+            for (byte[] field : arguments.subList(2, arguments.size()))
+                if (hash.remove(string(field)) != null)
+                    removed++;
+            return removed;
+        });
+    }
+
+    private Object hkeys(List<byte[]> arguments) {
+        List<Object> fields = new ArrayList<>();
+        for (Object field : read(string(arguments.get(1)), Map.class, Collections.emptyMap()).keySet())
+            fields.add(bytes((String) field));
+        return fields;
+    }
+
+    private Object hgetall(List<byte[]> arguments) {
+        List<Object> fieldsAndValues = new ArrayList<>();
+        for (Object field : read(string(arguments.get(1)), Map.class, Collections.emptyMap()).entrySet()) {
+            fieldsAndValues.add(bytes((String) ((Map.Entry) field).getKey()));
+            fieldsAndValues.add(((Map.Entry) field).getValue());
+        }
+        return fieldsAndValues;
+    }
+
+    private Object hscan(List<byte[]> arguments) {
+        ScanOptions options = new ScanOptions(arguments, 3);
+        List<Object> fieldsAndValues = new ArrayList<>();
+        for (Object field : read(string(arguments.get(1)), Map.class, Collections.emptyMap()).entrySet())
+            if (options.matches((String) ((Map.Entry) field).getKey())) {
+                fieldsAndValues.add(bytes((String) ((Map.Entry) field).getKey()));
+                fieldsAndValues.add(((Map.Entry) field).getValue());
+            }
+        return lastScanStep(fieldsAndValues);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object sadd(List<byte[]> arguments) {
+        return write(string(arguments.get(1)), Set.class, ConcurrentHashMap::newKeySet, 0L, set -> {
+            long added = 0;
+            for (byte[] member : arguments.subList(2, arguments.size()))
+                if (set.add(string(member)))
+                    added++;
+            return added;
+        });
+    }
+
+    private Object srem(List<byte[]> arguments) {
+        return write(string(arguments.get(1)), Set.class, null, 0L, set -> {
+            long removed = 0;
+            for (byte[] member : arguments.subList(2, arguments.size()))
+                if (set.remove(string(member)))
+                    removed++;
+            return removed;
+        });
+    }
+
+    private Object smembers(List<byte[]> arguments) {
+        List<Object> members = new ArrayList<>();
+        for (Object member : read(string(arguments.get(1)), Set.class, Collections.emptySet()))
+            members.add(bytes((String) member));
+        return members;
+    }
+
+    private Object sismember(List<byte[]> arguments) {
+        return read(string(arguments.get(1)), Set.class, Collections.emptySet()).contains(string(arguments.get(2))) ? 1L : 0L;
+    }
+
+    private Object sscan(List<byte[]> arguments) {
+        ScanOptions options = new ScanOptions(arguments, 3);
+        List<Object> members = new ArrayList<>();
+        for (Object member : read(string(arguments.get(1)), Set.class, Collections.emptySet()))
+            if (options.matches((String) member))
+                members.add(bytes((String) member));
+        return lastScanStep(members);
+    }
+
+    private Object zadd(List<byte[]> arguments) {
+        if (arguments.size() % 2 != 0)
+            throw new RespException("ERR syntax error");
+        //scores are parsed before change, so invalid command doesn't change sorted set
+        double[] scores = new double[arguments.size() / 2 - 1];
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = SortedSet.parseScore(string(arguments.get(2 + 2 * i)));
+        return write(string(arguments.get(1)), SortedSet.class, SortedSet::new, 0L, sortedSet -> {
+            long added = 0;
+            for (int i = 0; i < scores.length; i++)
+                if (sortedSet.add(string(arguments.get(3 + 2 * i)), scores[i]))
+                    added++;
+            return added;
+        });
+    }
+
+    private Object zrem(List<byte[]> arguments) {
+        return write(string(arguments.get(1)), SortedSet.class, null, 0L, sortedSet -> {
+            long removed = 0;
+            for (byte[] member : arguments.subList(2, arguments.size()))
+                if (sortedSet.remove(string(member)))
+                    removed++;
+            return removed;
+        });
+    }
+
+    private Object zscore(List<byte[]> arguments) {
+        Double score = read(string(arguments.get(1)), SortedSet.class, new SortedSet()).score(string(arguments.get(2)));
+        return score == null ? null : bytes(SortedSet.formatScore(score));
+    }
+
+    private Object zrange(List<byte[]> arguments, boolean reverse) {
+        boolean withScores = arguments.size() == 5 && "withscores".equalsIgnoreCase(string(arguments.get(4)));
+        if (arguments.size() > 4 && !withScores)
+            throw new RespException("ERR syntax error");
+        SortedSet sortedSet = read(string(arguments.get(1)), SortedSet.class, new SortedSet());
+        return members(sortedSet.range(parseLong(arguments.get(2)), parseLong(arguments.get(3)), reverse), withScores);
+    }
+
+    private Object zrangeByScore(List<byte[]> arguments, boolean reverse) {
+        SortedSet.ScoreBound min = new SortedSet.ScoreBound(string(arguments.get(reverse ? 3 : 2)));
+        SortedSet.ScoreBound max = new SortedSet.ScoreBound(string(arguments.get(reverse ? 2 : 3)));
+        boolean withScores = false;
+        int offset = 0;
+        int count = -1;
+        for (int i = 4; i < arguments.size(); i++) {
+            String option = string(arguments.get(i));
+            if ("withscores".equalsIgnoreCase(option)) {
+                withScores = true;
+            } else if ("limit".equalsIgnoreCase(option) && i + 2 < arguments.size()) {
+                offset = (int) parseLong(arguments.get(++i));
+                count = (int) parseLong(arguments.get(++i));
+            } else {
+                throw new RespException("ERR syntax error");
+            }
+        }
+        SortedSet sortedSet = read(string(arguments.get(1)), SortedSet.class, new SortedSet());
+        return members(offset < 0 ? Collections.emptyList() : sortedSet.rangeByScore(min, max, reverse, offset, count), withScores);
+    }
+
+    /**
+     * @param members {@link List} of {@link SortedSet.Member}
+     * @param withScores boolean score follows every member
+     * @return {@link List<Object>} reply
+     */
+    private static List<Object> members(List<SortedSet.Member> members, boolean withScores) {
+        List<Object> reply = new ArrayList<>();
+        for (SortedSet.Member member : members) {
+            reply.add(bytes(member.getMember()));
+            if (withScores)
+                reply.add(bytes(SortedSet.formatScore(member.getScore())));
+        }
+        return reply;
+    }
+
+    /**
+     * collections are scanned in one step, like small collections of redis
+     * @param elements {@link List<Object>} all matched elements
+     * @return {@link List<Object>} reply with cursor 0
+     */
+    private static List<Object> lastScanStep(List<Object> elements) {
+        return Arrays.asList(new byte[]{'0'}, elements);
+    }
+
+    /**
+     * get value of key
+     * @param key {@link String} key
+     * @param type {@link Class} expected type of value
+     * @param absent value returned when key doesn't exist
+     * @param <T> type of value
+     * @return value
+     */
+    private <T> T read(String key, Class<T> type, T absent) {
+        Entry entry = keys.get(key);
+        return entry == null ? absent : cast(entry, type);
+    }
+
+    /**
+     * change value of key, key is created for new value and removed when collection becomes empty
+     * @param key {@link String} key
+     * @param type {@link Class} expected type of value
+     * @param creator {@link Supplier} of new value, null when command doesn't create key
+     * @param absent reply when key doesn't exist and isn't created
+     * @param change {@link Function} changes value and returns reply
+     * @param <T> type of value
+     * @return reply of change
+     */
+    private <T> Object write(String key, Class<T> type, Supplier<T> creator, Object absent, Function<T, Object> change) {
+        Object[] reply = {absent};
+        keys.compute(key, (currentKey, entry) -> {
+            if (entry == null && creator == null)
+                return null;
+            T value = entry == null ? creator.get() : cast(entry, type);
+            reply[0] = change.apply(value);
+            if (isEmpty(value)) {
+                if (entry != null)
+                    keysOrder.remove(entry.sequence, currentKey);
+                return null;
+            }
+            return entry == null ? created(currentKey, value) : entry;
+        });
+        return reply[0];
+    }
+
+    /**
+     * @param key {@link String} removed key
+     * @return boolean key existed
+     */
+    private boolean remove(String key) {
+        boolean[] removed = new boolean[1];
+        keys.computeIfPresent(key, (currentKey, entry) -> {
+            keysOrder.remove(entry.sequence, currentKey);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * @param key {@link String} new key
+     * @param value value of key
+     * @return {@link Entry} with the next sequence
+     */
+    private Entry created(String key, Object value) {
+        Entry entry = new Entry(sequence.incrementAndGet(), value);
+        keysOrder.put(entry.sequence, key);
+        return entry;
+    }
+
+    /**
+     * @param entry {@link Entry}
+     * @param type {@link Class} expected type of value
+     * @param <T> type of value
+     * @return value of entry
+     */
+    private static <T> T cast(Entry entry, Class<T> type) {
+        if (!type.isInstance(entry.value))
+            throw new RespException(WRONG_TYPE);
+        return type.cast(entry.value);
+    }
+
+    private static boolean isEmpty(Object value) {
+        return value instanceof Map ? ((Map) value).isEmpty()
+                : value instanceof Set ? ((Set) value).isEmpty()
+                : value instanceof SortedSet && ((SortedSet) value).size() == 0;
+    }
+
+    /**
+     * @param value byte[] integer argument
+     * @return long
+     */
+    static long parseLong(byte[] value) {
+        try {
+            return Long.parseLong(string(value));
+        } catch (NumberFormatException e) {
+            throw new RespException("ERR value is not an integer or out of range");
+        }
+    }
+
+    private void command(String name, int arity, boolean exclusive, Command.Handler handler) {
+        commands.put(name, new Command(name, arity, exclusive, handler));
+    }
+
+    /**
+     * value of key with sequence of key creation
+     */
+    private static final class Entry {
+
+        private final long sequence;
+        private final Object value;
+
+        private Entry(long sequence, Object value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * MATCH and COUNT options of SCAN commands
+     */
+    private static final class ScanOptions {
+
+        private GlobPattern pattern;
+        private int count = 10;
+
+        /**
+         * @param arguments {@link List} of byte[] arguments of command
+         * @param start int index of the first option
+         */
+        private ScanOptions(List<byte[]> arguments, int start) {
+            Iterator<byte[]> options = arguments.subList(start, arguments.size()).iterator();
+            while (options.hasNext()) {
+                String option = string(options.next());
+                if (!options.hasNext())
+                    throw new RespException("ERR syntax error");
+                if ("match".equalsIgnoreCase(option))
+                    pattern = new GlobPattern(string(options.next()));
+                else if ("count".equalsIgnoreCase(option))
+                    count = (int) parseLong(options.next());
+                else
+                    throw new RespException("ERR syntax error");
+            }
+            if (count < 1)
+                throw new RespException("ERR syntax error");
+        }
+
+        private boolean matches(String value) {
+            return pattern == null || pattern.matches(value);
+        }
+
+    }
+
+}
@@ -0,0 +1,411 @@
+package ru.redisMessenger.application.server;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * client connection of {@link RespServer}, commands are read and executed by one thread of connection
+ * after the first SUBSCRIBE replies and messages are written by separate thread from queue,
+ * so publishers never wait for slow subscribers, subscriber with more than {@link #PUSH_LIMIT} queued messages is disconnected
+ */
+@Log4j2
+final class RespConnection implements Runnable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int PUSH_LIMIT = 1 << 20;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final Object NO_REPLY = new Object();
+    private static final Object END_OF_PUSH = new Object();
+
+    private final RespServer server;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Set<String> channels = ConcurrentHashMap.newKeySet();
+    private final Set<String> patterns = ConcurrentHashMap.newKeySet();
+
+    private List<List<byte[]>> transaction;
+    private boolean transactionFailed;
+    private boolean quit;
+    private volatile BlockingQueue<Object> pushed;
+    private volatile boolean closed;
+
+    /**
+     * constructor
+     * @param server {@link RespServer} executes commands
+     * @param socket {@link Socket} accepted connection
+     * @throws IOException when streams of socket aren't available
+     */
+    RespConnection(RespServer server, Socket socket) throws IOException {
+        this.server = server;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!closed && !quit) {
+                List<byte[]> arguments = readCommand();
+                if (arguments == null)
+                    break;
+                if (arguments.isEmpty())
+                    continue;
+                Object reply;
+                try {
+                    reply = handle(arguments);
+                } catch (RespException e) {
+                    reply = e;
+                }
+                if (reply != NO_REPLY)
+                    send(reply);
+                //replies of pipelined commands are written together
+                if (pushed == null && in.available() == 0)
+                    out.flush();
+            }
+        } catch (RespException e) {
+            //protocol error, connection can't be read further
+            sendLast(e);
+        } catch (IOException e) {
+            if (!closed)
+                log.debug("connection {} is lost:\n{}", socket.getRemoteSocketAddress(), e.getLocalizedMessage());
+        } finally {
+            BlockingQueue<Object> currentPushed = pushed;
+            //queued replies are written before the writing thread closes connection
+            if (currentPushed == null)
+                close();
+            else
+                currentPushed.offer(END_OF_PUSH);
+        }
+    }
+
+    /**
+     * queue message of subscribed channel
+     * @param message {@link List} message reply
+     * @return boolean message is queued
+     */
+    boolean push(List<byte[]> message) {
+        BlockingQueue<Object> currentPushed = pushed;
+        if (closed || currentPushed == null)
+            return false;
+        if (currentPushed.size() >= PUSH_LIMIT) {
+            log.warn("subscriber {} is disconnected, it doesn't read {} messages", socket.getRemoteSocketAddress(), PUSH_LIMIT);
+            close();
+            return false;
+        }
+        return currentPushed.offer(message);
+    }
+
+    /**
+     * close socket and remove subscriptions
+     */
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (String channel : channels)
+            server.unsubscribe(this, channel, false);
+        for (String pattern : patterns)
+            server.unsubscribe(this, pattern, true);
+        BlockingQueue<Object> currentPushed = pushed;
+        if (currentPushed != null)
+            currentPushed.offer(END_OF_PUSH);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug(e.getLocalizedMessage());
+        }
+        server.removeConnection(this);
+    }
+
+    /**
+     * execute command of connection or pass it to server
+     * @param arguments {@link List} of byte[] name and arguments of command
+     * @return reply, {@link #NO_REPLY} when replies are already sent
+     * @throws IOException when reply isn't written
+     */
+    private Object handle(List<byte[]> arguments) throws IOException {
+        String name = KeySpace.string(arguments.get(0)).toLowerCase();
+        if (!channels.isEmpty() || !patterns.isEmpty()) {
+            switch (name) {
+                case "subscribe": case "psubscribe": case "unsubscribe": case "punsubscribe": case "quit":
+                    break;
+                case "ping":
+                    return Arrays.asList("pong".getBytes(StandardCharsets.US_ASCII), arguments.size() > 1 ? arguments.get(1) : new byte[0]);
+                default:
+                    throw new RespException("ERR only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT allowed in this context");
+            }
+        }
+        switch (name) {
+            case "quit":
+                sendLast(StatusReply.OK);
+                return NO_REPLY;
+            case "multi":
+                if (transaction != null)
+                    throw new RespException("ERR MULTI calls can not be nested");
+                transaction = new ArrayList<>();
+                return StatusReply.OK;
+            case "exec":
+                if (transaction == null)
+                    throw new RespException("ERR EXEC without MULTI");
+                List<List<byte[]>> queued = transaction;
+                boolean failed = transactionFailed;
+                transaction = null;
+                transactionFailed = false;
+                if (failed)
+                    throw new RespException("EXECABORT Transaction discarded because of previous errors.");
+                return server.executeAll(queued);
+            case "discard":
+                if (transaction == null)
+                    throw new RespException("ERR DISCARD without MULTI");
+                transaction = null;
+                transactionFailed = false;
+                return StatusReply.OK;
+            case "subscribe":
+            case "psubscribe":
+                subscribe(name, arguments, "psubscribe".equals(name));
+                return NO_REPLY;
+            case "unsubscribe":
+            case "punsubscribe":
+                unsubscribe(name, arguments, "punsubscribe".equals(name));
+                return NO_REPLY;
+            default:
+                if (transaction == null)
+                    return server.execute(arguments);
+                try {
+                    server.command(arguments).check(arguments);
+                } catch (RespException e) {
+                    transactionFailed = true;
+                    throw e;
+                }
+                transaction.add(arguments);
+                return StatusReply.QUEUED;
+        }
+    }
+
+    /**
+     * subscribe to channels or patterns, every subscription is confirmed by own reply
+     * @param name {@link String} lower case name of command
+     * @param arguments {@link List} of byte[] command and channels
+     * @param pattern boolean channels are patterns
+     * @throws IOException when replies aren't written
+     */
+    private void subscribe(String name, List<byte[]> arguments, boolean pattern) throws IOException {
+        if (arguments.size() < 2)
+            throw new RespException("ERR wrong number of arguments for '".concat(name).concat("' command"));
+        startPush();
+        Set<String> subscriptions = pattern ? patterns : channels;
+        for (byte[] channel : arguments.subList(1, arguments.size())) {
+            if (subscriptions.add(KeySpace.string(channel)))
+                server.subscribe(this, KeySpace.string(channel), pattern);
+            send(Arrays.asList(KeySpace.bytes(name), channel, (long) (channels.size() + patterns.size())));
+        }
+    }
+
+    /**
+     * unsubscribe from channels or patterns, all subscriptions when channels aren't set
+     * @param name {@link String} lower case name of command
+     * @param arguments {@link List} of byte[] command and channels
+     * @param pattern boolean channels are patterns
+     * @throws IOException when replies aren't written
+     */
+    private void unsubscribe(String name, List<byte[]> arguments, boolean pattern) throws IOException {
+        Set<String> subscriptions = pattern ? patterns : channels;
+        List<String> unsubscribed = new ArrayList<>();
+        if (arguments.size() > 1)
+            for (byte[] channel : arguments.subList(1, arguments.size()))
+                unsubscribed.add(KeySpace.string(channel));
+        else
+            unsubscribed.addAll(subscriptions);
+        if (unsubscribed.isEmpty())
+            send(Arrays.asList(KeySpace.bytes(name), null, (long) (channels.size() + patterns.size())));
+        for (String channel : unsubscribed) {
+            if (subscriptions.remove(channel))
+                server.unsubscribe(this, channel, pattern);
+            send(Arrays.asList(KeySpace.bytes(name), KeySpace.bytes(channel), (long) (channels.size() + patterns.size())));
+        }
+    }
+
+    /**
+     * switch writing to separate thread, it is done once per connection
+     * @throws IOException when buffered replies aren't written
+     */
+    private void startPush() throws IOException {
+        if (pushed != null)
+            return;
+        out.flush();
+        BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        pushed = queue;
+        server.startThread(() -> writePushed(queue));
+    }
+
+    /**
+     * write queued replies until the end of queue, then close connection
+     * @param queue {@link BlockingQueue} of replies
+     */
+    private void writePushed(BlockingQueue<Object> queue) {
+        try {
+            Object reply = queue.take();
+            while (reply != END_OF_PUSH) {
+                write(out, reply);
+                reply = queue.poll();
+                if (reply == null) {
+                    out.flush();
+                    reply = queue.take();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            if (!closed)
+                log.debug("subscriber {} is lost:\n{}", socket.getRemoteSocketAddress(), e.getLocalizedMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * write reply or queue it when connection is subscribed
+     * @param reply reply
+     * @throws IOException when reply isn't written
+     */
+    private void send(Object reply) throws IOException {
+        BlockingQueue<Object> currentPushed = pushed;
+        if (currentPushed == null)
+            write(out, reply);
+        else
+            currentPushed.offer(reply);
+    }
+
+    /**
+     * send the last reply, connection isn't read anymore and is closed after reply
+     * @param reply reply
+     */
+    private void sendLast(Object reply) {
+        quit = true;
+        try {
+            send(reply);
+            if (pushed == null)
+                out.flush();
+        } catch (IOException e) {
+            log.debug(e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * read command in RESP or inline format
+     * @return {@link List} of byte[] name and arguments, null when connection is closed by client
+     * @throws IOException when connection is lost
+     */
+    private List<byte[]> readCommand() throws IOException {
+        int marker = in.read();
+        if (marker == -1)
+            return null;
+        if (marker != '*') {
+            List<byte[]> arguments = new ArrayList<>();
+            for (String argument : ((char) marker + readLine()).trim().split("\\s+"))
+                if (!argument.isEmpty())
+                    arguments.add(KeySpace.bytes(argument));
+            return arguments;
+        }
+        long count = parseLength(readLine());
+        if (count <= 0)
+            return Collections.emptyList();
+        List<byte[]> arguments = new ArrayList<>((int) count);
+        for (long i = 0; i < count; i++) {
+            marker = in.read();
+            if (marker != '$')
+                throw new RespException("ERR Protocol error: expected '$', got '".concat(String.valueOf((char) marker)).concat("'"));
+            byte[] argument = new byte[(int) parseLength(readLine())];
+            readFully(argument);
+            readLine();
+            arguments.add(argument);
+        }
+        return arguments;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1)
+                throw new EOFException("connection is closed by client");
+            line.append((char) c);
+        }
+        if (in.read() != '\n')
+            throw new RespException("ERR Protocol error: line must end with CRLF");
+        return line.toString();
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read == -1)
+                throw new EOFException("connection is closed by client");
+            offset += read;
+        }
+    }
+
+    private static long parseLength(String line) {
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new RespException("ERR Protocol error: invalid length");
+        }
+    }
+
+    /**
+     * write reply in RESP format
+     * @param out {@link OutputStream}
+     * @param reply {@link StatusReply}, {@link RespException}, {@link Long}, byte[], {@link List} of replies or null
+     * @throws IOException when reply isn't written
+     */
+    private static void write(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1".getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+        } else if (reply instanceof StatusReply) {
+            writeLine(out, '+', ((StatusReply) reply).getStatus());
+        } else if (reply instanceof RespException) {
+            writeLine(out, '-', ((RespException) reply).getMessage().replace('\r', ' ').replace('\n', ' '));
+        } else if (reply instanceof Long) {
+            writeLine(out, ':', String.valueOf(reply));
+        } else if (reply instanceof byte[]) {
+            writeLine(out, '$', String.valueOf(((byte[]) reply).length));
+            out.write((byte[]) reply);
+            out.write(CRLF);
+        } else if (reply instanceof List) {
+            writeLine(out, '*', String.valueOf(((List<?>) reply).size()));
+            for (Object element : (List<?>) reply)
+                write(out, element);
+        } else {
+            throw new IllegalStateException("unsupported reply ".concat(reply.getClass().getName()));
+        }
+    }
+
+    private static void writeLine(OutputStream out, char type, String line) throws IOException {
+        out.write(type);
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+}
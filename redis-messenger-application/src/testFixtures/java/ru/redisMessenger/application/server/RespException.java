@@ -0,0 +1,18 @@
+package ru.redisMessenger.application.server;
+
+/**
+ * error reply of {@link RespServer}, message starts with error code like ERR, WRONGTYPE or NOSCRIPT
+ */
+public class RespException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * constructor
+     * @param errorMessage {@link String} code and text of error
+     */
+    public RespException(String errorMessage) {
+        super(errorMessage);
+    }
+
+}
@@ -0,0 +1,376 @@
+package ru.redisMessenger.application.server;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * in-process server of redis protocol (RESP) for tests, it doesn't need redis binaries and starts in milliseconds
+ * it supports commands used by {@link ru.redisMessenger.application.util.JedisClient} and {@link ru.redisMessenger.application.util.SubscriptionManager}:
+ * strings, keys, SCAN, hashes, sets, sorted sets, pub/sub, MULTI/EXEC and scripts, data is kept only in memory
+ * every connection is served by own thread, commands of different keys are executed in parallel,
+ * EXEC, scripts and commands of many keys are executed alone, so they are atomic like in redis
+ * lua isn't interpreted, scripts are executed by java implementations registered by {@link #registerScript(String, Script)}
+ * {@link EmbeddedRedis} starts it with scripts of messenger and connects clients of the process to it
+ */
+@Log4j2
+public class RespServer {
+
+    private final String host;
+    private final int port;
+    private final KeySpace keySpace = new KeySpace();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Command> commands = new HashMap<>();
+    private final Set<RespConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<RespConnection>> channelSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<RespConnection>> patternSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, GlobPattern> patterns = new ConcurrentHashMap<>();
+    private final Map<String, Script> registeredScripts = new ConcurrentHashMap<>();
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "resp-server-".concat(String.valueOf(threadNumber.getAndIncrement())));
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * constructor
+     * @param host {@link String} address of listening socket
+     * @param port int port of listening socket, 0 for any free port
+     */
+    public RespServer(String host, int port) {
+        this.host = host;
+        this.port = port;
+        command("ping", -1, false, arguments -> arguments.size() > 1 ? arguments.get(1) : StatusReply.PONG);
+        command("echo", 2, false, arguments -> arguments.get(1));
+        command("select", 2, false, this::select);
+        command("publish", 3, false, arguments -> publish(KeySpace.string(arguments.get(1)), arguments.get(2)));
+        command("script", -2, false, this::script);
+        command("eval", -3, true, arguments -> eval(sha(arguments.get(1)), arguments, arguments.get(1)));
+        command("evalsha", -3, true, arguments -> eval(KeySpace.string(arguments.get(1)).toLowerCase(), arguments, null));
+    }
+
+    /**
+     * register java implementation of lua script, it can be loaded and called by sha1 of source
+     * @param source {@link String} lua source of script
+     * @param script {@link Script} implementation
+     */
+    public void registerScript(String source, Script script) {
+        registeredScripts.put(sha(source.getBytes(StandardCharsets.UTF_8)), script);
+    }
+
+    /**
+     * start listening
+     * @throws IOException when port isn't available
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null)
+            return;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getByName(host), port), 1024);
+        executor.execute(this::accept);
+        log.info("resp server is listening on {}:{}", host, getPort());
+    }
+
+    /**
+     * @return int listening port
+     */
+    public int getPort() {
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    /**
+     * stop listening and close all connections
+     */
+    public synchronized void close() {
+        closed = true;
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            log.error(e.getLocalizedMessage());
+        }
+        for (RespConnection connection : connections)
+            connection.close();
+        executor.shutdownNow();
+        log.info("resp server on port {} is closed", getPort());
+    }
+
+    /**
+     * get command by name
+     * @param arguments {@link List} of byte[] name and arguments of command
+     * @return {@link Command}
+     */
+    Command command(List<byte[]> arguments) {
+        String name = KeySpace.string(arguments.get(0)).toLowerCase();
+        Command command = commands.get(name);
+        if (command == null)
+            command = keySpace.getCommand(name);
+        if (command == null)
+            throw new RespException("ERR unknown command '".concat(name).concat("'"));
+        return command;
+    }
+
+    /**
+     * execute one command
+     * @param arguments {@link List} of byte[] name and arguments of command
+     * @return reply
+     */
+    Object execute(List<byte[]> arguments) {
+        Command command = command(arguments);
+        Lock commandLock = command.isExclusive() ? lock.writeLock() : lock.readLock();
+        commandLock.lock();
+        try {
+            return command.execute(arguments);
+        } finally {
+            commandLock.unlock();
+        }
+    }
+
+    /**
+     * execute commands of transaction alone
+     * @param transaction {@link List} of commands
+     * @return {@link List<Object>} replies, failed commands are replied by {@link RespException}, other commands aren't rolled back
+     */
+    List<Object> executeAll(List<List<byte[]>> transaction) {
+        List<Object> replies = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (List<byte[]> arguments : transaction)
+                try {
+                    replies.add(command(arguments).execute(arguments));
+                } catch (RespException e) {
+                    replies.add(e);
+                }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return replies;
+    }
+
+    /**
+     * add subscriber of channel or pattern
+     * @param connection {@link RespConnection} subscriber
+     * @param channel {@link String} channel or pattern
+     * @param pattern boolean channel is pattern
+     */
+    void subscribe(RespConnection connection, String channel, boolean pattern) {
+        if (pattern)
+            patterns.computeIfAbsent(channel, GlobPattern::new);
+        (pattern ? patternSubscribers : channelSubscribers).computeIfAbsent(channel, key -> ConcurrentHashMap.newKeySet()).add(connection);
+    }
+
+    /**
+     * remove subscriber of channel or pattern
+     * @param connection {@link RespConnection} subscriber
+     * @param channel {@link String} channel or pattern
+     * @param pattern boolean channel is pattern
+     */
+    void unsubscribe(RespConnection connection, String channel, boolean pattern) {
+        (pattern ? patternSubscribers : channelSubscribers).computeIfPresent(channel, (key, subscribers) -> {
+            subscribers.remove(connection);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * forget closed connection
+     * @param connection {@link RespConnection}
+     */
+    void removeConnection(RespConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * send message to subscribers of channel and matching patterns, subscribers receive it asynchronously
+     * @param channel {@link String} channel
+     * @param message byte[] message
+     * @return long count of subscribers which received message
+     */
+    private long publish(String channel, byte[] message) {
+        long receivers = 0;
+        byte[] binaryChannel = KeySpace.bytes(channel);
+        for (RespConnection connection : channelSubscribers.getOrDefault(channel, Collections.emptySet()))
+            if (connection.push(Arrays.asList("message".getBytes(StandardCharsets.US_ASCII), binaryChannel, message)))
+                receivers++;
+        for (Map.Entry<String, Set<RespConnection>> subscribers : patternSubscribers.entrySet())
+            if (patterns.computeIfAbsent(subscribers.getKey(), GlobPattern::new).matches(channel))
+                for (RespConnection connection : subscribers.getValue())
+                    if (connection.push(Arrays.asList("pmessage".getBytes(StandardCharsets.US_ASCII), KeySpace.bytes(subscribers.getKey()), binaryChannel, message)))
+                        receivers++;
+        return receivers;
+    }
+
+    private Object select(List<byte[]> arguments) {
+        if (KeySpace.parseLong(arguments.get(1)) != 0)
+            throw new RespException("ERR DB index is out of range");
+        return StatusReply.OK;
+    }
+
+    private Object script(List<byte[]> arguments) {
+        String subcommand = KeySpace.string(arguments.get(1)).toLowerCase();
+        switch (subcommand) {
+            case "load":
+                if (arguments.size() != 3)
+                    throw new RespException("ERR wrong number of arguments for SCRIPT LOAD");
+                String sha = sha(arguments.get(2));
+                if (!registeredScripts.containsKey(sha))
+                    throw new RespException("ERR lua isn't supported, script ".concat(sha).concat(" isn't registered"));
+                loadedScripts.add(sha);
+                return sha.getBytes(StandardCharsets.US_ASCII);
+            case "exists":
+                List<Object> exist = new ArrayList<>();
+                for (byte[] scriptSha : arguments.subList(2, arguments.size()))
+                    exist.add(loadedScripts.contains(KeySpace.string(scriptSha).toLowerCase()) ? 1L : 0L);
+                return exist;
+            case "flush":
+                loadedScripts.clear();
+                return StatusReply.OK;
+            default:
+                throw new RespException("ERR Unknown SCRIPT subcommand or wrong # of args.");
+        }
+    }
+
+    /**
+     * execute script, it is called under exclusive lock
+     * @param sha {@link String} sha1 of script
+     * @param arguments {@link List} of byte[] EVAL or EVALSHA, script, count of keys, keys and args
+     * @param source byte[] source of EVAL, null for EVALSHA
+     * @return reply of script
+     */
+    private Object eval(String sha, List<byte[]> arguments, byte[] source) {
+        Script script = registeredScripts.get(sha);
+        if (source != null && script == null)
+            throw new RespException("ERR lua isn't supported, script ".concat(sha).concat(" isn't registered"));
+        if (source == null && (script == null || !loadedScripts.contains(sha)))
+            throw new RespException("NOSCRIPT No matching script. Please use EVAL.");
+        loadedScripts.add(sha);
+        long keysCount = KeySpace.parseLong(arguments.get(2));
+        if (keysCount < 0)
+            throw new RespException("ERR Number of keys can't be negative");
+        if (keysCount > arguments.size() - 3)
+            throw new RespException("ERR Number of keys can't be greater than number of args");
+        List<byte[]> keys = arguments.subList(3, 3 + (int) keysCount);
+        List<byte[]> args = arguments.subList(3 + (int) keysCount, arguments.size());
+        return scriptReply(script.execute(this::callFromScript, keys, args));
+    }
+
+    /**
+     * command called by script, like redis.call
+     * @param arguments name and arguments of command
+     * @return reply, status is converted to {@link String}
+     */
+    private Object callFromScript(Object... arguments) {
+        List<byte[]> command = new ArrayList<>();
+        for (Object argument : arguments)
+            command.add(argument instanceof byte[] ? (byte[]) argument : String.valueOf(argument).getBytes(StandardCharsets.UTF_8));
+        String name = KeySpace.string(command.get(0)).toLowerCase();
+        if (!"publish".equals(name) && keySpace.getCommand(name) == null)
+            throw new RespException("ERR This Redis command is not allowed from scripts");
+        Object reply = command(command).execute(command);
+        return reply instanceof StatusReply ? ((StatusReply) reply).getStatus() : reply;
+    }
+
+    /**
+     * convert reply of script like redis converts lua values
+     * @param reply value returned by {@link Script}
+     * @return reply of EVAL
+     */
+    private static Object scriptReply(Object reply) {
+        if (reply == null || Boolean.FALSE.equals(reply))
+            return null;
+        if (Boolean.TRUE.equals(reply))
+            return 1L;
+        if (reply instanceof Number)
+            return ((Number) reply).longValue();
+        if (reply instanceof String)
+            return ((String) reply).getBytes(StandardCharsets.UTF_8);
+        if (reply instanceof byte[] || reply instanceof StatusReply)
+            return reply;
+        if (reply instanceof List) {
+            List<Object> replies = new ArrayList<>();
+            for (Object element : (List<?>) reply)
+                replies.add(scriptReply(element));
+            return replies;
+        }
+        throw new RespException("ERR unsupported reply of script ".concat(reply.getClass().getName()));
+    }
+
+    /**
+     * @param source byte[] source of script
+     * @return {@link String} sha1 in lower case hex
+     */
+    private static String sha(byte[] source) {
+        try {
+            StringBuilder sha = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(source))
+                sha.append(String.format("%02x", b & 0xFF));
+            return sha.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * accept connections until server is closed
+     */
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                RespConnection connection = new RespConnection(this, socket);
+                connections.add(connection);
+                try {
+                    executor.execute(connection);
+                } catch (RejectedExecutionException e) {
+                    connection.close();
+                    return;
+                }
+            } catch (IOException e) {
+                if (!closed)
+                    log.error("connection isn't accepted:\n{}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * start thread of server
+     * @param task {@link Runnable}
+     */
+    void startThread(Runnable task) {
+        executor.execute(task);
+    }
+
+    private void command(String name, int arity, boolean exclusive, Command.Handler handler) {
+        commands.put(name, new Command(name, arity, exclusive, handler));
+    }
+
+}
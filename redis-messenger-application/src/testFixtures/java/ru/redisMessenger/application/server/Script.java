@@ -0,0 +1,37 @@
+package ru.redisMessenger.application.server;
+
+import java.util.List;
+
+/**
+ * java implementation of lua script, {@link RespServer} doesn't interpret lua,
+ * so every script loaded by SCRIPT LOAD or called by EVAL has to be registered by {@link RespServer#registerScript(String, Script)}
+ * script is executed atomically, like lua scripts of redis
+ */
+@FunctionalInterface
+public interface Script {
+
+    /**
+     * execute script
+     * @param redis {@link Redis} calls commands, like redis.call
+     * @param keys {@link List} of byte[] KEYS of script
+     * @param args {@link List} of byte[] ARGV of script
+     * @return reply: null for nil or false, {@link Boolean}, {@link Long}, {@link Integer}, {@link String}, byte[] or {@link List} of replies
+     */
+    Object execute(Redis redis, List<byte[]> keys, List<byte[]> args);
+
+    /**
+     * commands available to script
+     */
+    @FunctionalInterface
+    interface Redis {
+
+        /**
+         * call command, error of command stops script with the same error
+         * @param arguments name and arguments of command: byte[], {@link String} in UTF-8 or numbers
+         * @return reply of command: {@link Long}, byte[], {@link List} of replies, null or status as {@link String}
+         */
+        Object call(Object... arguments);
+
+    }
+
+}
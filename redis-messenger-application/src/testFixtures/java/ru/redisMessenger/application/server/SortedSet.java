@@ -0,0 +1,238 @@
+package ru.redisMessenger.application.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * value of sorted set, members are ordered by score and then by bytes like members of redis sorted set
+ * all methods are synchronized, one sorted set is changed by one command at a time
+ */
+final class SortedSet {
+
+    private final Map<String, Double> scores = new HashMap<>();
+    private final TreeSet<Member> members = new TreeSet<>();
+
+    /**
+     * add member or change its score
+     * @param member {@link String} member, every char is one byte
+     * @param score double
+     * @return boolean member is new
+     */
+    synchronized boolean add(String member, double score) {
+        Double previousScore = scores.put(member, score);
+        if (previousScore != null)
+            members.remove(new Member(member, previousScore));
+        members.add(new Member(member, score));
+        return previousScore == null;
+    }
+
+    /**
+     * @param member {@link String} member, every char is one byte
+     * @return boolean member was removed
+     */
+    synchronized boolean remove(String member) {
+        Double score = scores.remove(member);
+        if (score == null)
+            return false;
+        members.remove(new Member(member, score));
+        return true;
+    }
+
+    synchronized int size() {
+        return scores.size();
+    }
+
+    /**
+     * @param member {@link String} member, every char is one byte
+     * @return {@link Double} score, null when member doesn't exist
+     */
+    synchronized Double score(String member) {
+        return scores.get(member);
+    }
+
+    /**
+     * get members by rank, like ZRANGE and ZREVRANGE
+     * @param start long the first rank, negative rank is counted from the end
+     * @param stop long the last rank, inclusive
+     * @param reverse boolean members with the highest scores first
+     * @return {@link List<Member>}
+     */
+    synchronized List<Member> range(long start, long stop, boolean reverse) {
+        int size = members.size();
+        long first = start < 0 ? Math.max(size + start, 0) : start;
+        long last = stop < 0 ? size + stop : Math.min(stop, size - 1);
+        List<Member> range = new ArrayList<>();
+        Iterator<Member> iterator = reverse ? members.descendingIterator() : members.iterator();
+        for (long rank = 0; rank <= last && iterator.hasNext(); rank++) {
+            Member member = iterator.next();
+            if (rank >= first)
+                range.add(member);
+        }
+        return range;
+    }
+
+    /**
+     * get members by score, like ZRANGEBYSCORE and ZREVRANGEBYSCORE
+     * @param min {@link ScoreBound} the lowest score
+     * @param max {@link ScoreBound} the highest score
+     * @param reverse boolean members with the highest scores first
+     * @param offset int count of skipped members
+     * @param count int max count of members, negative value means all members
+     * @return {@link List<Member>}
+     */
+    synchronized List<Member> rangeByScore(ScoreBound min, ScoreBound max, boolean reverse, int offset, int count) {
+        NavigableSet<Member> candidates = reverse
+                ? members.headSet(new Member(null, max.getScore()), false).descendingSet()
+                : members.tailSet(new Member("", min.getScore()), true);
+        List<Member> range = new ArrayList<>();
+        int skipped = 0;
+        for (Member member : candidates) {
+            if (reverse ? !min.isBelow(member.getScore()) : !max.isAbove(member.getScore()))
+                break;
+            if (!min.isBelow(member.getScore()) || !max.isAbove(member.getScore()))
+                continue;
+            if (skipped++ < offset)
+                continue;
+            if (count >= 0 && range.size() >= count)
+                break;
+            range.add(member);
+        }
+        return range;
+    }
+
+    /**
+     * member with score
+     */
+    static final class Member implements Comparable<Member> {
+
+        //null member is greater than any member with the same score
+        private final String member;
+        private final double score;
+
+        /**
+         * constructor
+         * @param member {@link String} member, every char is one byte
+         * @param score double
+         */
+        Member(String member, double score) {
+            this.member = member;
+            this.score = score;
+        }
+
+        String getMember() {
+            return member;
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(Member other) {
+            int result = Double.compare(score, other.score);
+            if (result != 0)
+                return result;
+            if (member == null || other.member == null)
+                return member == null ? (other.member == null ? 0 : 1) : -1;
+            //chars of members are bytes, so it is unsigned comparison of bytes
+            return member.compareTo(other.member);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Member && compareTo((Member) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Double.hashCode(score) + (member == null ? 0 : member.hashCode());
+        }
+
+    }
+
+    /**
+     * min or max of score range: number, (number for exclusive bound, -inf or +inf
+     */
+    static final class ScoreBound {
+
+        private final double score;
+        private final boolean exclusive;
+
+        /**
+         * constructor
+         * @param bound {@link String} bound of range
+         */
+        ScoreBound(String bound) {
+            exclusive = bound.startsWith("(");
+            try {
+                score = parseScore(exclusive ? bound.substring(1) : bound);
+            } catch (RespException e) {
+                throw new RespException("ERR min or max is not a float");
+            }
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        /**
+         * @param value double score of member
+         * @return boolean value is in range when this bound is min
+         */
+        boolean isBelow(double value) {
+            return exclusive ? score < value : score <= value;
+        }
+
+        /**
+         * @param value double score of member
+         * @return boolean value is in range when this bound is max
+         */
+        boolean isAbove(double value) {
+            return exclusive ? score > value : score >= value;
+        }
+
+    }
+
+    /**
+     * parse score like redis, inf, +inf and -inf are infinities
+     * @param value {@link String} score
+     * @return double
+     */
+    static double parseScore(String value) {
+        switch (value.toLowerCase()) {
+            case "inf":
+            case "+inf":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                try {
+                    double score = Double.parseDouble(value);
+                    if (Double.isNaN(score))
+                        throw new NumberFormatException();
+                    return score;
+                } catch (NumberFormatException e) {
+                    throw new RespException("ERR value is not a valid float");
+                }
+        }
+    }
+
+    /**
+     * format score for reply, integral scores have no fraction
+     * @param score double
+     * @return {@link String}
+     */
+    static String formatScore(double score) {
+        if (Double.isInfinite(score))
+            return score > 0 ? "inf" : "-inf";
+        if (score == Math.rint(score) && Math.abs(score) < 1e17)
+            return String.valueOf((long) score);
+        return String.valueOf(score);
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.redisMessenger.application.server;
+
+/**
+ * simple string reply, e.g. +OK
+ */
+final class StatusReply {
+
+    static final StatusReply OK = new StatusReply("OK");
+    static final StatusReply QUEUED = new StatusReply("QUEUED");
+    static final StatusReply PONG = new StatusReply("PONG");
+
+    private final String status;
+
+    /**
+     * constructor
+     * @param status {@link String} text of reply without line breaks
+     */
+    StatusReply(String status) {
+        this.status = status;
+    }
+
+    String getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return status;
+    }
+
+}
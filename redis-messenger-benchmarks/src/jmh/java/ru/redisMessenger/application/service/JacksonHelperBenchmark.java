@@ -0,0 +1,102 @@
+package ru.redisMessenger.application.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.SimpleUser;
+import ru.redisMessenger.core.entities.SuperUser;
+import ru.redisMessenger.core.entities.User;
+import ru.redisMessenger.core.util.JacksonHelper;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * serialization of {@link User} and {@link Message} by {@link JacksonHelper} with filters used by service
+ * benchmarks *WithNewMapper are the baseline: a new {@link ObjectMapper} is built for every call,
+ * like every helper did before the mapper was shared
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JacksonHelperBenchmark {
+
+    private static final FilterProvider USER_ONLY_FILTER_PROVIDER = new SimpleFilterProvider()
+            .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept("messages"));
+    private static final FilterProvider MESSAGES_FILTER_PROVIDER = new SimpleFilterProvider()
+            .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept("messages", "description", "dateCreate", "rights"))
+            .addFilter("Message", SimpleBeanPropertyFilter.serializeAll());
+
+    private JacksonHelper<User> userHelper;
+    private JacksonHelper<Message> messageHelper;
+    private User user;
+    private Message message;
+    private String serializedUser;
+    private String serializedMessage;
+
+    @Setup
+    public void setUp() throws IOException {
+        userHelper = new JacksonHelper<>(USER_ONLY_FILTER_PROVIDER);
+        messageHelper = new JacksonHelper<>(MESSAGES_FILTER_PROVIDER);
+        user = new SuperUser("super");
+        user.setDateCreate(new Date());
+        message = new Message();
+        message.setFrom(user);
+        message.setTo(new SimpleUser("simple"));
+        message.setText("hello!!!");
+        message.setDateCreate(new Date());
+        serializedUser = userHelper.getSerializedObject(user);
+        serializedMessage = messageHelper.getSerializedObject(message);
+    }
+
+    @Benchmark
+    public String serializeUser() throws IOException {
+        return userHelper.getSerializedObject(user);
+    }
+
+    @Benchmark
+    public User deserializeUser() throws IOException {
+        return userHelper.getDeserializedObject(serializedUser, User.class);
+    }
+
+    @Benchmark
+    public String serializeMessage() throws IOException {
+        return messageHelper.getSerializedObject(message);
+    }
+
+    @Benchmark
+    public Message deserializeMessage() throws IOException {
+        return messageHelper.getDeserializedObject(serializedMessage, Message.class);
+    }
+
+    @Benchmark
+    public String serializeUserWithNewMapper() throws IOException {
+        return new ObjectMapper().writer(USER_ONLY_FILTER_PROVIDER).writeValueAsString(user);
+    }
+
+    @Benchmark
+    public User deserializeUserWithNewMapper() throws IOException {
+        return new ObjectMapper().readValue(serializedUser, User.class);
+    }
+
+    @Benchmark
+    public String serializeMessageWithNewMapper() throws IOException {
+        return new ObjectMapper().writer(MESSAGES_FILTER_PROVIDER).writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Message deserializeMessageWithNewMapper() throws IOException {
+        return new ObjectMapper().readValue(serializedMessage, Message.class);
+    }
+
+}
@@ -0,0 +1,55 @@
+package ru.redisMessenger.application.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.SimpleUser;
+import ru.redisMessenger.core.entities.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building of redis keys and channels by {@link RedisMessengerService}, it is done on every call of service
+ * the benchmark is in package of service, because key builders are package-private
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyBuilderBenchmark {
+
+    private RedisMessengerService service;
+    private User userFrom;
+    private User userTo;
+    private String userFromKey;
+    private String userToKey;
+
+    @Setup
+    public void setUp() {
+        service = new RedisMessengerService();
+        userFrom = new AdvancedUser("fromUser");
+        userTo = new SimpleUser("toUser");
+        userFromKey = service.userKey(userFrom);
+        userToKey = service.userKey(userTo);
+    }
+
+    @Benchmark
+    public String userKey() {
+        return service.userKey(userFrom);
+    }
+
+    @Benchmark
+    public String conversationMessagesKey() {
+        return service.conversationMessagesKey(userFromKey, userToKey);
+    }
+
+    @Benchmark
+    public String conversationChatChannel() {
+        return service.conversationChatChannel(userFromKey, userToKey);
+    }
+
+}
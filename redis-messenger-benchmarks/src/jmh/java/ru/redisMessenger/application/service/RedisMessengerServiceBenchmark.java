@@ -0,0 +1,78 @@
+package ru.redisMessenger.application.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.redisMessenger.application.exception.RedisMessengerException;
+import ru.redisMessenger.application.server.EmbeddedRedis;
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.SuperUser;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * full calls of {@link RedisMessengerService} against in-process server of {@link EmbeddedRedis},
+ * redis of config.properties isn't used, so results compare versions of service, not servers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisMessengerServiceBenchmark {
+
+    private static final int HISTORY_SIZE = 1000;
+    private static final int PAGE_SIZE = 20;
+
+    private EmbeddedRedis redis;
+    private RedisMessengerService service;
+    private User superUser;
+    private User advancedUser;
+    private String superUserKey;
+    private long sentMessages;
+
+    @Setup
+    public void setUp() throws RedisMessengerException, IOException {
+        redis = new EmbeddedRedis();
+        redis.start();
+        service = new RedisMessengerService();
+        superUserKey = service.addUser(new SuperUser("benchmarkSuperUser"));
+        service.addUser(new AdvancedUser("benchmarkAdvancedUser"));
+        superUser = service.getUser(superUserKey);
+        advancedUser = service.getUser("user:AdvancedUser:benchmarkAdvancedUser");
+        for (int i = 0; i < HISTORY_SIZE; i++)
+            sendMessage();
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+        redis.close();
+    }
+
+    @Benchmark
+    public Message sendMessage() throws RedisMessengerException {
+        Message message = new Message();
+        message.setFrom(superUser);
+        message.setTo(advancedUser);
+        message.setText("benchmark message ".concat(String.valueOf(sentMessages++)));
+        return service.sendMessage(message);
+    }
+
+    @Benchmark
+    public MessagesPage getMessages() throws RedisMessengerException {
+        return service.getMessages(superUser, advancedUser, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public User getUser() throws RedisMessengerException, IOException {
+        return service.getUser(superUserKey);
+    }
+
+}
@@ -0,0 +1,27 @@
+package ru.redisMessenger.core.entities;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * group conversation, members are stored apart from group
+ */
+@Data
+public class Group {
+
+    private String name;
+    private String ownerKey;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss")
+    private Date dateCreate;
+
+    public Group(){
+
+    }
+
+    public Group(String name){
+        this.name = name;
+    }
+
+}
@@ -2,6 +2,7 @@ package ru.redisMessenger.core.entities;
 
 import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import lombok.Data;
 
@@ -10,6 +11,7 @@ import java.util.Date;
 
 /**
  * user's message
+ * id is given on sending, so equal texts sent at the same millisecond are different messages
  */
 @Data
 @JsonFilter("Message")
@@ -19,7 +21,9 @@ public class Message {
     String text;
     User from;
     User to;
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy hh:mm:ss:SSS")
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss:SSS")
     private Date dateCreate;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id;
 
 }
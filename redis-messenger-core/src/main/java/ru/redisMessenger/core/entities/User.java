@@ -22,7 +22,7 @@ public abstract class User {
 
     private String name;
     private List<Message> messages;
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy hh:mm:ss")
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss")
     private Date dateCreate;
 
     public User(){
@@ -0,0 +1,198 @@
+package ru.redisMessenger.core.util;
+
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.SimpleUser;
+import ru.redisMessenger.core.entities.SuperUser;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * compact binary codec: magic byte, fixed field layout, short type ids, epoch millis and varint lengths
+ * magic byte is never the first byte of utf-8 json, so binary and json values can be told apart
+ * @param <T> type of object
+ */
+public abstract class BinaryCodec<T> implements Codec<T> {
+
+    private static final byte USER_TYPE_NULL = 0;
+    private static final byte USER_TYPE_SIMPLE = 1;
+    private static final byte USER_TYPE_ADVANCED = 2;
+    private static final byte USER_TYPE_SUPER = 3;
+
+    private byte magic;
+
+    /**
+     * constructor
+     * @param magic byte first byte of every value
+     */
+    protected BinaryCodec(byte magic) {
+        this.magic = magic;
+    }
+
+    /**
+     * write fields of object
+     * @param object {@link T}
+     * @param out {@link ByteArrayOutputStream}
+     */
+    protected abstract void write(T object, ByteArrayOutputStream out);
+
+    /**
+     * read fields of object
+     * @param in {@link ByteBuffer} positioned after magic byte
+     * @return {@link T}
+     * @throws IOException when value is incorrect
+     */
+    protected abstract T read(ByteBuffer in) throws IOException;
+
+    @Override
+    public byte[] encode(T object) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(magic);
+        write(object, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] value) throws IOException {
+        if (!canDecode(value))
+            throw new IOException("value isn't written by ".concat(getClass().getSimpleName()));
+        try {
+            return read(ByteBuffer.wrap(value, 1, value.length - 1));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("value is truncated");
+        }
+    }
+
+    @Override
+    public boolean canDecode(byte[] value) {
+        return value.length > 0 && value[0] == magic;
+    }
+
+    /**
+     * write unsigned varint, 7 bits per byte
+     * @param out {@link ByteArrayOutputStream}
+     * @param value long not negative
+     */
+    protected static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * read unsigned varint
+     * @param in {@link ByteBuffer}
+     * @return long
+     * @throws IOException when varint is longer than 64 bits
+     */
+    protected static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("varint is too long");
+    }
+
+    /**
+     * write string as varint length + 1 and utf-8 bytes, null is written as 0
+     * @param out {@link ByteArrayOutputStream}
+     * @param value {@link String}
+     */
+    protected static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * read string
+     * @param in {@link ByteBuffer}
+     * @return {@link String}
+     * @throws IOException when value is incorrect
+     */
+    protected static String readString(ByteBuffer in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0)
+            return null;
+        if (length - 1 > in.remaining())
+            throw new IOException("value is truncated");
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * write date as varint epoch millis + 1, null is written as 0
+     * @param out {@link ByteArrayOutputStream}
+     * @param date {@link Date}
+     */
+    protected static void writeDate(ByteArrayOutputStream out, Date date) {
+        writeVarLong(out, date == null ? 0 : date.getTime() + 1);
+    }
+
+    /**
+     * read date
+     * @param in {@link ByteBuffer}
+     * @return {@link Date}
+     * @throws IOException when value is incorrect
+     */
+    protected static Date readDate(ByteBuffer in) throws IOException {
+        long millis = readVarLong(in);
+        return millis == 0 ? null : new Date(millis - 1);
+    }
+
+    /**
+     * write type of user as one byte
+     * @param out {@link ByteArrayOutputStream}
+     * @param user {@link User}
+     */
+    protected static void writeUserType(ByteArrayOutputStream out, User user) {
+        if (user == null)
+            out.write(USER_TYPE_NULL);
+        else if (user instanceof SuperUser)
+            out.write(USER_TYPE_SUPER);
+        else if (user instanceof AdvancedUser)
+            out.write(USER_TYPE_ADVANCED);
+        else if (user instanceof SimpleUser)
+            out.write(USER_TYPE_SIMPLE);
+        else
+            throw new IllegalArgumentException("unknown user class ".concat(user.getClass().getName()));
+    }
+
+    /**
+     * read type of user and create empty user
+     * @param in {@link ByteBuffer}
+     * @return {@link User} or null
+     * @throws IOException when type is unknown
+     */
+    protected static User readUserType(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        switch (type) {
+            case USER_TYPE_NULL:
+                return null;
+            case USER_TYPE_SIMPLE:
+                return new SimpleUser();
+            case USER_TYPE_ADVANCED:
+                return new AdvancedUser();
+            case USER_TYPE_SUPER:
+                return new SuperUser();
+            default:
+                throw new IOException("unknown user type ".concat(String.valueOf(type)));
+        }
+    }
+
+}
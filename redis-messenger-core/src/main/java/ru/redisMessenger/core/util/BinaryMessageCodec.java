@@ -0,0 +1,72 @@
+package ru.redisMessenger.core.util;
+
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * binary codec of {@link Message}: magic, text, type and name of sender, type and name of recipient, dateCreate, id
+ * id is absent in messages written before messages had ids
+ * like json of message, users are written without details
+ */
+public class BinaryMessageCodec extends BinaryCodec<Message> {
+
+    private static final byte MAGIC = (byte) 0xB2;
+
+    /**
+     * default constructor
+     */
+    public BinaryMessageCodec() {
+        super(MAGIC);
+    }
+
+    @Override
+    protected void write(Message message, ByteArrayOutputStream out) {
+        writeString(out, message.getText());
+        writeUser(out, message.getFrom());
+        writeUser(out, message.getTo());
+        writeDate(out, message.getDateCreate());
+        if (message.getId() != null)
+            writeString(out, message.getId());
+    }
+
+    @Override
+    protected Message read(ByteBuffer in) throws IOException {
+        Message message = new Message();
+        message.setText(readString(in));
+        message.setFrom(readUser(in));
+        message.setTo(readUser(in));
+        message.setDateCreate(readDate(in));
+        if (in.hasRemaining())
+            message.setId(readString(in));
+        return message;
+    }
+
+    /**
+     * write type and name of user
+     * @param out {@link ByteArrayOutputStream}
+     * @param user {@link User}
+     */
+    private void writeUser(ByteArrayOutputStream out, User user) {
+        writeUserType(out, user);
+        if (user != null)
+            writeString(out, user.getName());
+    }
+
+    /**
+     * read type and name of user
+     * @param in {@link ByteBuffer}
+     * @return {@link User} or null
+     * @throws IOException when value is incorrect
+     */
+    private User readUser(ByteBuffer in) throws IOException {
+        User user = readUserType(in);
+        if (user != null)
+            user.setName(readString(in));
+        return user;
+    }
+
+}
@@ -0,0 +1,40 @@
+package ru.redisMessenger.core.util;
+
+import ru.redisMessenger.core.entities.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * binary codec of {@link User}: magic, type, name, dateCreate
+ */
+public class BinaryUserCodec extends BinaryCodec<User> {
+
+    private static final byte MAGIC = (byte) 0xB1;
+
+    /**
+     * default constructor
+     */
+    public BinaryUserCodec() {
+        super(MAGIC);
+    }
+
+    @Override
+    protected void write(User user, ByteArrayOutputStream out) {
+        writeUserType(out, user);
+        writeString(out, user.getName());
+        writeDate(out, user.getDateCreate());
+    }
+
+    @Override
+    protected User read(ByteBuffer in) throws IOException {
+        User user = readUserType(in);
+        if (user == null)
+            throw new IOException("user type is empty");
+        user.setName(readString(in));
+        user.setDateCreate(readDate(in));
+        return user;
+    }
+
+}
@@ -0,0 +1,34 @@
+package ru.redisMessenger.core.util;
+
+import java.io.IOException;
+
+/**
+ * converts objects to values stored in redis and back
+ * @param <T> type of object
+ */
+public interface Codec<T> {
+
+    /**
+     * Object -> bytes
+     * @param object {@link T} POJO
+     * @return byte[] value
+     * @throws IOException when object is incorrect
+     */
+    byte[] encode(T object) throws IOException;
+
+    /**
+     * bytes -> Object
+     * @param value byte[] value
+     * @return {@link T} deserialized object
+     * @throws IOException when value is incorrect
+     */
+    T decode(byte[] value) throws IOException;
+
+    /**
+     * check format of value
+     * @param value byte[] value
+     * @return true when value is written by this codec
+     */
+    boolean canDecode(byte[] value);
+
+}
@@ -0,0 +1,43 @@
+package ru.redisMessenger.core.util;
+
+import java.io.IOException;
+
+/**
+ * writes values by one codec, reads values written by either of two codecs, so old and new values can coexist
+ * @param <T> type of object
+ */
+public class FormatDetectingCodec<T> implements Codec<T> {
+
+    private final Codec<T> writeCodec;
+    private final Codec<T> readCodec;
+
+    /**
+     * default constructor
+     * @param writeCodec {@link Codec} for new values
+     * @param readCodec {@link Codec} for existing values of the other format
+     */
+    public FormatDetectingCodec(Codec<T> writeCodec, Codec<T> readCodec) {
+        this.writeCodec = writeCodec;
+        this.readCodec = readCodec;
+    }
+
+    @Override
+    public byte[] encode(T object) throws IOException {
+        return writeCodec.encode(object);
+    }
+
+    @Override
+    public T decode(byte[] value) throws IOException {
+        if (writeCodec.canDecode(value))
+            return writeCodec.decode(value);
+        if (readCodec.canDecode(value))
+            return readCodec.decode(value);
+        throw new IOException("unknown format of value");
+    }
+
+    @Override
+    public boolean canDecode(byte[] value) {
+        return writeCodec.canDecode(value) || readCodec.canDecode(value);
+    }
+
+}
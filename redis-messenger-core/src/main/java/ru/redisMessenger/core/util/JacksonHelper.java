@@ -2,27 +2,59 @@ package ru.redisMessenger.core.util;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * serialize/deserialize
+ * one {@link ObjectMapper} is shared by all helpers, so serializers and deserializers are built only once,
+ * writers and readers are immutable and thread-safe, a writer is built once by its helper, readers are shared by target class
  */
 @Log4j2
 public class JacksonHelper<T> {
 
-    private ObjectMapper mapper;
-    private FilterProvider filterProvider;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private final ObjectWriter writer;
 
     /**
      * default constructor
      * @param filterProvider {@link FilterProvider} contains ignorable fields
      */
     public JacksonHelper(FilterProvider filterProvider){
-        this.mapper = new ObjectMapper();
-        this.filterProvider = filterProvider;
+        this.writer = createWriter(filterProvider);
+    }
+
+    /**
+     * build writer over shared mapper, the caller keeps it instead of building it for every object
+     * @param filterProvider {@link FilterProvider} contains ignorable fields
+     * @return {@link ObjectWriter}
+     */
+    public static ObjectWriter createWriter(FilterProvider filterProvider){
+        return MAPPER.writer(filterProvider);
+    }
+
+    /**
+     * @return {@link ObjectWriter} writer of helper
+     */
+    public ObjectWriter getWriter(){
+        return writer;
+    }
+
+    /**
+     * get shared reader
+     * @param clazz {@link Class} target class
+     * @return {@link ObjectReader}
+     */
+    public static ObjectReader getReader(Class<?> clazz){
+        return READERS.computeIfAbsent(clazz, MAPPER::readerFor);
     }
 
     /**
@@ -32,7 +64,7 @@ public class JacksonHelper<T> {
      * @throws JsonProcessingException when object is incorrect
      */
     public String getSerializedObject(T object) throws JsonProcessingException {
-        String serializedObject = mapper.writer(filterProvider).writeValueAsString(object);
+        String serializedObject = writer.writeValueAsString(object);
         log.debug("serialized {}:\n {}", object.getClass(), serializedObject);
         return serializedObject;
     }
@@ -45,7 +77,7 @@ public class JacksonHelper<T> {
      * @throws IOException when readValue
      */
     public T getDeserializedObject(String objectStr, Class<T> clazz) throws IOException {
-        T object = mapper.readValue(objectStr, clazz);
+        T object = getReader(clazz).readValue(objectStr);
         log.debug("deserialize \n{} \nto {}", objectStr, clazz);
         return object;
     }
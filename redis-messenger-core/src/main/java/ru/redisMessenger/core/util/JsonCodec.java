@@ -0,0 +1,43 @@
+package ru.redisMessenger.core.util;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+
+import java.io.IOException;
+
+/**
+ * json codec, writer and reader are taken from {@link JacksonHelper} once, when codec is created
+ * @param <T> type of object
+ */
+public class JsonCodec<T> implements Codec<T> {
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    /**
+     * default constructor
+     * @param filterProvider {@link FilterProvider} contains ignorable fields
+     * @param clazz {@link Class} target class
+     */
+    public JsonCodec(FilterProvider filterProvider, Class<T> clazz) {
+        this.writer = JacksonHelper.createWriter(filterProvider);
+        this.reader = JacksonHelper.getReader(clazz);
+    }
+
+    @Override
+    public byte[] encode(T object) throws IOException {
+        return writer.writeValueAsBytes(object);
+    }
+
+    @Override
+    public T decode(byte[] value) throws IOException {
+        return reader.readValue(value);
+    }
+
+    @Override
+    public boolean canDecode(byte[] value) {
+        return value.length > 0 && value[0] == '{';
+    }
+
+}
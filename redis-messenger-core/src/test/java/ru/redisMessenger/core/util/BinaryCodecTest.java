@@ -0,0 +1,94 @@
+package ru.redisMessenger.core.util;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.junit.Test;
+import ru.redisMessenger.core.entities.AdvancedUser;
+import ru.redisMessenger.core.entities.Message;
+import ru.redisMessenger.core.entities.SimpleUser;
+import ru.redisMessenger.core.entities.SuperUser;
+import ru.redisMessenger.core.entities.User;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for {@link BinaryCodec}
+ */
+public class BinaryCodecTest {
+
+    private static final FilterProvider USER_ONLY_FILTER_PROVIDER = new SimpleFilterProvider()
+            .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept("messages"));
+    private static final FilterProvider MESSAGES_FILTER_PROVIDER = new SimpleFilterProvider()
+            .addFilter("User", SimpleBeanPropertyFilter.serializeAllExcept("messages", "description", "dateCreate", "rights"))
+            .addFilter("Message", SimpleBeanPropertyFilter.serializeAll());
+
+    @Test
+    public void encodeDecodeUser() throws Exception {
+        User user = new AdvancedUser("advanced");
+        user.setDateCreate(new Date(1492934330123L));
+        User decoded = new BinaryUserCodec().decode(new BinaryUserCodec().encode(user));
+        assertEquals(AdvancedUser.class, decoded.getClass());
+        assertEquals(user.getName(), decoded.getName());
+        assertEquals(user.getDateCreate(), decoded.getDateCreate());
+    }
+
+    @Test
+    public void encodeDecodeMessage() throws Exception {
+        Message message = new Message();
+        message.setFrom(new SuperUser("super"));
+        message.setTo(new SimpleUser("простой"));
+        message.setText("привет!!!");
+        message.setDateCreate(new Date(1492935877168L));
+        message.setId("5b7c5d4e-8f3a-4c1b-9e2d-0a6f1c3b7e90");
+        Message decoded = new BinaryMessageCodec().decode(new BinaryMessageCodec().encode(message));
+        assertEquals(message.getText(), decoded.getText());
+        assertEquals(SuperUser.class, decoded.getFrom().getClass());
+        assertEquals("super", decoded.getFrom().getName());
+        assertEquals(SimpleUser.class, decoded.getTo().getClass());
+        assertEquals("простой", decoded.getTo().getName());
+        assertEquals(message.getDateCreate(), decoded.getDateCreate());
+        assertEquals(message.getId(), decoded.getId());
+        //message written before messages had ids
+        message.setId(null);
+        assertNull(new BinaryMessageCodec().decode(new BinaryMessageCodec().encode(message)).getId());
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() throws Exception {
+        Message message = new Message();
+        message.setFrom(new SuperUser("super"));
+        message.setTo(new SimpleUser("simple"));
+        message.setText("hello!!!");
+        message.setDateCreate(new Date());
+        int jsonLength = new JsonCodec<>(MESSAGES_FILTER_PROVIDER, Message.class).encode(message).length;
+        int binaryLength = new BinaryMessageCodec().encode(message).length;
+        assertTrue(binaryLength * 3 < jsonLength);
+    }
+
+    @Test
+    public void detectFormat() throws Exception {
+        User user = new SuperUser("super");
+        user.setDateCreate(new Date());
+        Codec<User> jsonCodec = new JsonCodec<>(USER_ONLY_FILTER_PROVIDER, User.class);
+        Codec<User> binaryCodec = new BinaryUserCodec();
+        Codec<User> codec = new FormatDetectingCodec<>(binaryCodec, jsonCodec);
+        assertArrayEquals(binaryCodec.encode(user), codec.encode(user));
+        assertEquals("super", codec.decode(jsonCodec.encode(user)).getName());
+        assertEquals("super", codec.decode(binaryCodec.encode(user)).getName());
+        assertFalse(jsonCodec.canDecode(binaryCodec.encode(user)));
+        assertFalse(binaryCodec.canDecode(jsonCodec.encode(user)));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedValue() throws Exception {
+        User user = new SuperUser("super");
+        byte[] value = new BinaryUserCodec().encode(user);
+        new BinaryUserCodec().decode(Arrays.copyOf(value, value.length - 2));
+    }
+
+}
@@ -11,6 +11,7 @@ import ru.redisMessenger.core.entities.User;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * tests for {@link JacksonHelper}
@@ -50,4 +51,11 @@ public class JacksonHelperTest {
         new JacksonHelper<User>(USER_ONLY_FILTER_PROVIDER).getDeserializedObject(incorrectUserStr, User.class);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void writersAndReadersAreShared() {
+        JacksonHelper<User> helper = new JacksonHelper<>(USER_ONLY_FILTER_PROVIDER);
+        assertSame(helper.getWriter(), helper.getWriter());
+        assertSame(JacksonHelper.getReader(User.class), JacksonHelper.getReader(User.class));
+    }
+
+}